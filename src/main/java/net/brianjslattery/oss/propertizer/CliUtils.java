@@ -49,6 +49,7 @@ public class CliUtils {
 	private static final String IIQ_OUTPUT    = "iiqOutput";
 	private static final String TARGET_OUTPUT = "targetOutput";
 	private static final String IIQ_IMPORT    = "import";
+	private static final String IMPORT_FORCE  = "importForce";
 	public static final String IIQ_USER_VAR   = "iiqUserVar";
 	public static final String IIQ_PASS_VAR   = "iiqPassVar";
 	
@@ -62,7 +63,8 @@ public class CliUtils {
         options.addOption(new Option(OUTPUT,        true, "Output iiq.properties path"));
         options.addOption(new Option(IIQ_OUTPUT,    true, "Output iiq.properties path"));
         options.addOption(new Option(TARGET_OUTPUT, true, "Ouput target.properties path"));
-        options.addOption(new Option(IIQ_IMPORT,    true, "Run IIQ import. Value is the XML file."));
+        options.addOption(new Option(IIQ_IMPORT,    true, "Run IIQ import. Value is an XML file, a directory, a .manifest file, or a comma separated list of these."));
+        options.addOption(new Option(IMPORT_FORCE,  false, "Import even files whose content was already imported."));
         options.addOption(new Option(IIQ_USER_VAR,  true, "Name of env var to get user from."));
         options.addOption(new Option(IIQ_PASS_VAR,  true, "Name of env var to get pass from."));
         
@@ -86,9 +88,10 @@ public class CliUtils {
         String importCmd    = getString(cmd, IIQ_IMPORT);
         String iiqUserVar   = getString(cmd, IIQ_USER_VAR);
         String iiqPassVar   = getString(cmd, IIQ_PASS_VAR);
+        boolean importForce = cmd.hasOption(IMPORT_FORCE);
 
         return new PropertizerOptions(iiqInputPath, targInputPath, iiqOutputPath, targOutputPath,
-        								importCmd, iiqUserVar, iiqPassVar);
+        								importCmd, iiqUserVar, iiqPassVar, importForce);
 		
 	}
 
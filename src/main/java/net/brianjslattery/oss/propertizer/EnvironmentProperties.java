@@ -133,6 +133,25 @@ public class EnvironmentProperties {
 		return kmsIiqProperties;
 	}
 
+	/**
+	 * 
+	 * @return whether any property needs KMS decryption
+	 */
+	public boolean hasKmsProperties() {
+		return !kmsIiqProperties.isEmpty() || !kmsTargProperties.isEmpty();
+	}
+	
+	/**
+	 * Only looks at the names, so it is cheap enough to run before
+	 * {@link #create(Environment)}.
+	 * 
+	 * @return whether {@link #create(Environment)} would find any property needing KMS decryption
+	 */
+	public static boolean hasKmsVariables(Environment env) {
+		return env.get().keySet().stream()
+				.anyMatch(k -> (isIiq(k) || isTrg(k)) && isKms(dropPrefix(k)));
+	}
+
 	@Override
 	public String toString() {
 		
@@ -22,6 +22,12 @@
  */
 package net.brianjslattery.oss.propertizer;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
 import net.brianjslattery.oss.propertizer.kms.DecryptionService;
 import net.brianjslattery.oss.propertizer.kms.DecryptionServiceFactory;
 
@@ -44,6 +50,49 @@ class OptionParser {
 	}
 
 	SplitOption parse(String opt) {
+		return parseAll(Collections.singletonList(opt)).get(0);
+	}
+	
+	/**
+	 * Parse several options at once; every KMS value among them is
+	 * decrypted in a single {@link DecryptionService#decryptAll(Map)} batch.
+	 * 
+	 * @param opts the raw options
+	 * @return the parsed options, in the same order
+	 */
+	List<SplitOption> parseAll(List<String> opts) {
+		
+		List<SplitOption> parsed = new ArrayList<>(opts.size());
+		Map<String, String> batch = new HashMap<>();
+		
+		for (String opt : opts) {
+			SplitOption so = parseMeta(opt);
+			if (so.isKms()) {
+				batch.put(String.valueOf(parsed.size()), so.getVal());
+			}
+			parsed.add(so);
+		}
+		
+		if (batch.isEmpty()) {
+			return parsed;
+		}
+		
+		Map<String, String> decrypted = decryptionService.decryptAll(batch);
+		decrypted.forEach((i, v) -> {
+			int idx = Integer.parseInt(i);
+			SplitOption so = parsed.get(idx);
+			parsed.set(idx, new SplitOption(so.getRaw(), v, so.isKms(), so.isEnv()));
+		});
+		
+		return parsed;
+		
+	}
+	
+	/**
+	 * 
+	 * @return the option with env values resolved; KMS values are still ciphertext
+	 */
+	private static SplitOption parseMeta(String opt) {
 
 		if (opt == null) {
 			return new SplitOption(null, null, false, false);
@@ -74,8 +123,6 @@ class OptionParser {
 		
 		if (env) val = envVal(val);
 		
-		if (kms) val = kmsVal(val);
-		
 		return new SplitOption(opt, val, kms, env);
 		
 	}
@@ -84,9 +131,5 @@ class OptionParser {
 		String v = System.getenv(k);
 		return v != null && !v.isEmpty() ? v : null;
 	}
-	
-	private String kmsVal(String ciphertext) {
-		return decryptionService.decrypt(ciphertext);
-	}
 
 }
@@ -28,16 +28,23 @@ import static net.brianjslattery.oss.propertizer.Constants.DATASOURCE_USER_PROPN
 
 import java.io.IOException;
 import java.nio.file.Path;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Map;
 import java.util.Map.Entry;
-import java.util.Properties;
 import java.util.Set;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.function.Supplier;
 
+import net.brianjslattery.oss.propertizer.iiq.IIQCommandRunner;
 import net.brianjslattery.oss.propertizer.iiq.IIQEncryptor;
 import net.brianjslattery.oss.propertizer.iiq.IiqImportHandler;
 import net.brianjslattery.oss.propertizer.kms.DecryptionService;
 import net.brianjslattery.oss.propertizer.kms.DecryptionServiceFactory;
+import net.brianjslattery.oss.propertizer.utilities.BackupRotation;
 import net.brianjslattery.oss.propertizer.utilities.Environment;
 import net.brianjslattery.oss.propertizer.utilities.Utilities;
 
@@ -51,6 +58,9 @@ import net.brianjslattery.oss.propertizer.utilities.Utilities;
  */
 public class Propertizer {
 	
+	private static final String IIQ_BATCH_PREFIX  = "iiq:";
+	private static final String TARG_BATCH_PREFIX = "target:";
+	
 	private static final Set<String> NO_IIQ_ENC = new HashSet<>(asList(
 			DATASOURCE_URL_PROPNAME,
 			DATASOURCE_USER_PROPNAME));
@@ -62,61 +72,214 @@ public class Propertizer {
 		PropertizerOptions opts = CliUtils.handleArgs(args);
 		System.out.println(opts);
 		
+		// Overlap KMS client start-up with the environment scan and file loading. Properties
+		// runs only warm up when there is something to decrypt, so plain runs never load the AWS SDK
+		if (opts.isIiqImport()) {
+			DecryptionServiceFactory.warmUpService();
+		} else if (EnvironmentProperties.hasKmsVariables(env)) {
+			DecryptionServiceFactory.warmUpAsyncService();
+		}
+		
 		EnvironmentProperties eProps = EnvironmentProperties.create(env);
 		
 		System.out.println(eProps);
 		
-		if (opts.isIiqImport()) {
-			IiqImportHandler.doHandle(opts);
-			return;
+		try {
+			if (opts.isIiqImport()) {
+				IiqImportHandler.doHandle(opts, eProps);
+				return;
+			}
+			
+			handleProperties(opts, eProps);
+		} finally {
+			DecryptionServiceFactory.shutdown();
+			IIQCommandRunner.shutdown();
+			IIQEncryptor.shutdown();
+			BackupRotation.shutdown();
 		}
 		
-		handleProperties(opts, eProps);
-		
 		System.out.println("==========[ KMS Propertizer > Properties Complete ]==========");
 		
 	}
 	
-	private static void handleProperties(PropertizerOptions opts, EnvironmentProperties eProps) throws IOException {
-		
-		DecryptionService kms = DecryptionServiceFactory.getService();
-		
-		// Compile and store iiq.properties
-		StringBuilder iiqRpt = new StringBuilder();
-		Path iiqSrcPath  = eProps.getAbsoluteDirectory(opts.getInputPath());
-		Properties completedIiqProps = Utilities.loadPropertiesFile(iiqSrcPath, "IIQ");
-		populateFromKms(eProps.getKmsIiqProperties(),  completedIiqProps, kms, iiqRpt);
-		populateRegular(eProps.getIiqProperties(),     completedIiqProps, iiqRpt);
-		Path iiqDstPath = eProps.getAbsoluteDirectory(opts.getOutputPath());
-		Utilities.saveProperties(completedIiqProps, iiqDstPath);
-		System.out.println("==iiq.properties report==\n" + iiqRpt + "==end iiq.properties report==\n");
-		
-		// Compile and store target.properties
-		StringBuilder targRpt = new StringBuilder();
-		Path targSrcPath = eProps.getAbsoluteDirectory(opts.getTargetInputPath());
-		Properties completedTrgProps = Utilities.loadPropertiesFile(targSrcPath, "Target");
-		populateFromKms(eProps.getKmsTargProperties(), completedTrgProps, kms, targRpt);
-		populateRegular(eProps.getTargProperties(),    completedTrgProps, targRpt);
-		Path targDstPath = eProps.getAbsoluteDirectory(opts.getTargetOutputPath());
-		Utilities.saveProperties(completedTrgProps, targDstPath);
-		System.out.println("==target.properties report==\n" + targRpt + "==end target.properties report==\n");
+	static void handleProperties(PropertizerOptions opts, EnvironmentProperties eProps) throws IOException {
+		
+		// Both files share one KMS service (its limiter, retries and cache). It is only
+		// fetched for a file with KMS values, so nothing else waits for the warm-up to finish
+		Supplier<DecryptionService> kms = DecryptionServiceFactory::getAsyncService;
+		
+		// The files do not depend on each other, so each is decrypted on its own thread
+		CompletableFuture<Map<String, String>> iiqDecrypted  = decrypt("iiq.properties",    eProps.getKmsIiqProperties(),  kms);
+		CompletableFuture<Map<String, String>> targDecrypted = decrypt("target.properties", eProps.getKmsTargProperties(), kms);
+		
+		// IIQ encrypt both files' values in one batch, so IIQ is only ever driven from this thread
+		Map<String, String> toEncrypt = new HashMap<>();
+		addToEncrypt(IIQ_BATCH_PREFIX,  iiqDecrypted,  toEncrypt);
+		addToEncrypt(TARG_BATCH_PREFIX, targDecrypted, toEncrypt);
+		Map<String, String> encrypted = IIQEncryptor.encryptAll(toEncrypt);
+		
+		// Then each file is patched on its own thread
+		Path iiqSrc  = eProps.getAbsoluteDirectory(opts.getInputPath());
+		Path iiqDst  = eProps.getAbsoluteDirectory(opts.getOutputPath());
+		Path targSrc = eProps.getAbsoluteDirectory(opts.getTargetInputPath());
+		Path targDst = eProps.getAbsoluteDirectory(opts.getTargetOutputPath());
+		CompletableFuture<String> iiq = iiqDecrypted.thenCompose(d -> write("iiq.properties",
+				d, slice(encrypted, IIQ_BATCH_PREFIX), eProps.getIiqProperties(), iiqSrc, iiqDst));
+		CompletableFuture<String> targ = targDecrypted.thenCompose(d -> write("target.properties",
+				d, slice(encrypted, TARG_BATCH_PREFIX), eProps.getTargProperties(), targSrc, targDst));
+		
+		// Wait for both before reporting or failing, so nothing is left running; reports print in file order
+		CompletableFuture.allOf(iiq, targ).handle((v, t) -> null).join();
+		printReport("iiq.properties",    iiq);
+		printReport("target.properties", targ);
+		throwIfFailed(iiq, targ);
+		
+		StringBuilder kmsRpt = new StringBuilder();
+		if (eProps.hasKmsProperties()) {
+			kms.get().report(kmsRpt);
+		}
+		if (kmsRpt.length() > 0) {
+			System.out.println("==kms report==\n" + kmsRpt + "==end kms report==\n");
+		}
+		
+		StringBuilder encRpt = new StringBuilder();
+		IIQEncryptor.report(encRpt);
+		if (encRpt.length() > 0) {
+			System.out.println("==iiq encrypt report==\n" + encRpt + "==end iiq encrypt report==\n");
+		}
 		
 	}
 	
-	private static void populateFromKms(Map<String, String> src, Properties target, DecryptionService kms, StringBuilder rpt) {
-		for (Entry<String, String> e : src.entrySet()) {
+	private static CompletableFuture<Map<String, String>> decrypt(String name, Map<String, String> kmsProps,
+			Supplier<DecryptionService> kms) {
+		if (kmsProps.isEmpty()) {
+			return CompletableFuture.completedFuture(kmsProps);
+		}
+		return onThread("decrypt-" + name, () -> kms.get().decryptAll(kmsProps));
+	}
+	
+	/**
+	 * Wait for {@code decrypted} and add the values that need IIQ encrypting
+	 * to {@code batch}, under {@code prefix}. A file that failed adds nothing.
+	 */
+	private static void addToEncrypt(String prefix, CompletableFuture<Map<String, String>> decrypted,
+			Map<String, String> batch) {
+		Map<String, String> m = decrypted.handle((v, t) -> v).join();
+		if (m == null) {
+			return;
+		}
+		m.forEach((k, v) -> {
+			if (!NO_IIQ_ENC.contains(k)) {
+				batch.put(prefix + k, v);
+			}
+		});
+	}
+	
+	/**
+	 * 
+	 * @return the entries under {@code prefix}, with the prefix removed, in key order
+	 */
+	private static SortedMap<String, String> slice(Map<String, String> batch, String prefix) {
+		SortedMap<String, String> out = new TreeMap<>();
+		batch.forEach((k, v) -> {
+			if (k.startsWith(prefix)) {
+				out.put(k.substring(prefix.length()), v);
+			}
+		});
+		return out;
+	}
+	
+	/**
+	 * Patch one file on its own thread.
+	 * 
+	 * @return completes with the file's report
+	 */
+	private static CompletableFuture<String> write(String name, Map<String, String> decrypted, Map<String, String> encrypted,
+			Map<String, String> regular, Path src, Path dst) {
+		return onThread("write-" + name, () -> {
+			StringBuilder rpt = new StringBuilder();
+			Map<String, String> updates = new TreeMap<>();
+			populateFromKms(decrypted, encrypted, updates, rpt);
+			populateRegular(regular, updates, rpt);
+			boolean written = Utilities.patchProperties(src, updates, dst);
+			rpt.append("Output ").append(written ? "written" : "unchanged").append(": path=[").append(dst).append("].\n");
+			return rpt.toString();
+		});
+	}
+	
+	private static <T> CompletableFuture<T> onThread(String name, Task<T> task) {
+		CompletableFuture<T> f = new CompletableFuture<>();
+		Thread t = new Thread(() -> {
+			try {
+				f.complete(task.run());
+			} catch (IOException | RuntimeException | Error e) {
+				f.completeExceptionally(e);
+			}
+		}, name);
+		t.setDaemon(true);
+		t.start();
+		return f;
+	}
+	
+	private static void printReport(String name, CompletableFuture<String> f) {
+		String rpt = f.handle((v, t) -> {
+			if (t != null) {
+				System.out.println("Propertizer: failed to render " + name + ". Message: " + unwrap(t).getMessage());
+			}
+			return v;
+		}).join();
+		if (rpt != null) {
+			System.out.println("==" + name + " report==\n" + rpt + "==end " + name + " report==\n");
+		}
+	}
+	
+	/**
+	 * Rethrow the first failure, with the second suppressed in it.
+	 * 
+	 * @throws IOException when a file failed to be read or written
+	 */
+	private static void throwIfFailed(CompletableFuture<String> first, CompletableFuture<String> second) throws IOException {
+		Throwable failure = null;
+		for (CompletableFuture<String> f : asList(first, second)) {
+			Throwable t = f.handle((v, e) -> e).join();
+			if (t == null) {
+				continue;
+			}
+			if (failure == null) {
+				failure = unwrap(t);
+			} else {
+				failure.addSuppressed(unwrap(t));
+			}
+		}
+		if (failure == null) {
+			return;
+		}
+		if (failure instanceof IOException) {
+			throw (IOException) failure;
+		}
+		if (failure instanceof RuntimeException) {
+			throw (RuntimeException) failure;
+		}
+		throw (Error) failure;
+	}
+	
+	private static Throwable unwrap(Throwable t) {
+		return t instanceof CompletionException && t.getCause() != null ? t.getCause() : t;
+	}
+	
+	private static void populateFromKms(Map<String, String> decryptedProps, Map<String, String> iiqEncrypted,
+			Map<String, String> target, StringBuilder rpt) {
+		
+		for (Entry<String, String> e : decryptedProps.entrySet()) {
 			String k = e.getKey();
-			String v = e.getValue();
-			
-			// Decrypt
-			String decrypted = kms.decrypt(v);
+			String decrypted = e.getValue();
 			
 			if (NO_IIQ_ENC.contains(k)) {
 				target.put(k, decrypted);
 				rpt.append("Added KMS encrypted key, skip IIQ encrypt for URL or User: key=[").append(k)
 				   .append("], value=[").append(decrypted).append("] .\n");
 			} else {
-				target.put(k, IIQEncryptor.encrypt(decrypted));
+				target.put(k, iiqEncrypted.get(k));
 				int decryptedLen = decrypted.length();
 				rpt.append("Added KMS encrypted key via iiq encrypt key=[").append(k)
 				   .append("], valueLength=[").append(decryptedLen).append("].\n");
@@ -125,7 +288,7 @@ public class Propertizer {
 		}
 	}
 	
-	private static void populateRegular(Map<String, String> src, Properties target, StringBuilder rpt) {
+	private static void populateRegular(Map<String, String> src, Map<String, String> target, StringBuilder rpt) {
 		for (Entry<String, String> e : src.entrySet()) {
 			String k = e.getKey();
 			String v = e.getValue();
@@ -135,6 +298,11 @@ public class Propertizer {
 		}
 	}
 	
+	@FunctionalInterface
+	private interface Task<T> {
+		T run() throws IOException;
+	}
+	
 	private Propertizer() {
 	}
 	
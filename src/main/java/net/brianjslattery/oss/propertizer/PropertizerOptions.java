@@ -38,10 +38,18 @@ public class PropertizerOptions {
 	private final String importCommand;
 	private final String iiqUserVar;
 	private final String iiqPassVar;
+	private final boolean importForce;
 
 	public PropertizerOptions(Path inputPath,  Path targetInputPath,
 					          Path outputPath, Path targetOutputPath,
 					          String importCommand, String iiqUserVar, String iiqPassVar) {
+		this(inputPath, targetInputPath, outputPath, targetOutputPath, importCommand, iiqUserVar, iiqPassVar, false);
+	}
+
+	public PropertizerOptions(Path inputPath,  Path targetInputPath,
+					          Path outputPath, Path targetOutputPath,
+					          String importCommand, String iiqUserVar, String iiqPassVar,
+					          boolean importForce) {
 		super();
 		this.inputPath        = inputPath;
 		this.targetInputPath  = targetInputPath;
@@ -50,6 +58,7 @@ public class PropertizerOptions {
 		this.importCommand    = importCommand;
 		this.iiqUserVar       = iiqUserVar;
 		this.iiqPassVar       = iiqPassVar;
+		this.importForce      = importForce;
 	}
 
 	public Path getInputPath() {
@@ -92,6 +101,14 @@ public class PropertizerOptions {
 		return importCommand;
 	}
 	
+	/**
+	 * 
+	 * @return whether to import files even when their content was already imported
+	 */
+	public boolean isImportForce() {
+		return importForce;
+	}
+	
 	public String toString() {
 		return new StringBuilder("PropertizerOptions: ")
 				.append("inputPath=").append(getInputPath())
@@ -101,6 +118,7 @@ public class PropertizerOptions {
 				.append(", importCommand=").append(importCommand)
 				.append(", iiqUserVar=").append(iiqUserVar)
 				.append(", iiqPassVar=").append(iiqPassVar)
+				.append(", importForce=").append(importForce)
 				
 				
 				.toString();
@@ -22,10 +22,11 @@
  */
 package net.brianjslattery.oss.propertizer.iiq;
 
-import java.io.ByteArrayOutputStream;
-import java.io.IOException;
-import java.io.PrintStream;
+import java.util.StringJoiner;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Consumer;
 
+import net.brianjslattery.oss.propertizer.utilities.Environment;
 import sailpoint.launch.Launcher;
 
 /**
@@ -33,44 +34,142 @@ import sailpoint.launch.Launcher;
  * 
  * ex: runCommand("encrypt","{plaintext}")
  * 
+ * Output is captured per thread (see {@link ThreadRoutedOutput}), so
+ * commands may run concurrently and other threads' logging is never
+ * mixed into the result. With {@value IIQWorkerPool#WORKERS_VAR} above 1,
+ * {@link #submitCommand(Consumer, String...)} spreads commands over an
+ * {@link IIQWorkerPool}. With {@value IIQDaemon#PORT_VAR} set, commands go to
+ * a running {@link IIQDaemon} first.
+ * 
  * @author Brian J Slattery <oss@brnsl.com>
  * 
  */
 public class IIQCommandRunner {
+	
+	private static IIQWorkerPool pool;
+	private static boolean resolved;
+	
+	private static IIQDaemonClient daemon;
+	private static boolean daemonResolved;
 
-	// https://stackoverflow.com/a/8708357
+	/**
+	 * 
+	 * @return everything the command printed, trimmed
+	 */
 	public static String runCommand(String... args) {
-		
-		// Create a stream to hold the output
-		try (ByteArrayOutputStream baos = new ByteArrayOutputStream()) {
-			
-			try(PrintStream ps = new PrintStream(baos)) {
-				// IMPORTANT: Save the old System.out!
-				PrintStream old = System.out;
-				// Tell Java to use your special stream
-				System.setOut(ps);
-				// Print some output: goes to your special stream
-
-				Launcher.main(args);
-				
-				// Put things back
-				System.out.flush();
-				System.setOut(old);
-
-				return baos.toString().trim();	
+		StringJoiner out = new StringJoiner("\n");
+		runCommand(out::add, args);
+		return out.toString().trim();
+	}
+	
+	/**
+	 * Run a command, passing each line it prints to {@code lines} as it is printed.
+	 */
+	public static void runCommand(Consumer<String> lines, String... args) {
+		IIQDaemonClient d = daemon();
+		if (d != null && d.runCommand(lines, args)) {
+			return;
+		}
+		ThreadRoutedOutput.capture(lines, () -> Launcher.main(args));
+	}
+	
+	/**
+	 * Run a command on the worker pool if there is one, otherwise in
+	 * process on the calling thread.
+	 * 
+	 * @return completes once the command has finished and all its lines were passed on
+	 */
+	public static CompletableFuture<Void> submitCommand(Consumer<String> lines, String... args) {
+		IIQDaemonClient d = daemon();
+		try {
+			if (d != null && d.runCommand(lines, args)) {
+				return CompletableFuture.completedFuture(null);
 			}
-
-		} catch (IOException e) {
-			throw new RuntimeException("Failed to run IIQ Command.", e);
+		} catch (RuntimeException e) {
+			return CompletableFuture.failedFuture(e);
+		}
+		IIQWorkerPool p = pool();
+		if (p != null) {
+			return p.runCommand(lines, args);
+		}
+		try {
+			ThreadRoutedOutput.capture(lines, () -> Launcher.main(args));
+			return CompletableFuture.completedFuture(null);
+		} catch (RuntimeException e) {
+			return CompletableFuture.failedFuture(e);
+		}
+	}
+	
+	/**
+	 * 
+	 * @return how many commands {@link #submitCommand(Consumer, String...)} can run at once
+	 */
+	public static int getParallelism() {
+		IIQDaemonClient d = daemon();
+		if (d != null && d.isAvailable()) {
+			// The daemon schedules across its own workers
+			return 1;
 		}
-		
+		IIQWorkerPool p = pool();
+		return p != null ? p.size() : 1;
+	}
+	
+	/**
+	 * 
+	 * @return whether submitted commands can run side by side: over a worker pool, or on a daemon
+	 */
+	public static boolean isConcurrent() {
+		IIQDaemonClient d = daemon();
+		if (d != null && d.isAvailable()) {
+			return true;
+		}
+		IIQWorkerPool p = pool();
+		return p != null && p.size() > 1;
+	}
+	
+	/**
+	 * Stop the worker pool, if one was started.
+	 */
+	public static synchronized void shutdown() {
+		if (pool != null) {
+			pool.close();
+			pool = null;
+		}
+		resolved = false;
+	}
+	
+	private static synchronized IIQDaemonClient daemon() {
+		if (!daemonResolved) {
+			daemon         = IIQDaemonClient.from(Environment.getDefault());
+			daemonResolved = true;
+		}
+		return daemon;
+	}
+	
+	/**
+	 * Used by the daemon itself, which must run commands rather than forward them.
+	 */
+	static synchronized void disableDaemon() {
+		daemon         = null;
+		daemonResolved = true;
+	}
+	
+	private static synchronized IIQWorkerPool pool() {
+		if (!resolved) {
+			pool     = IIQWorkerPool.from(Environment.getDefault());
+			resolved = true;
+		}
+		return pool;
 	}
 	
 	public static void run(String... args) {
 		String cmd = args[0];
 		System.out.println("IIQCommandRunner: begin command execution for " + cmd);
 		long start = System.nanoTime();
-		Launcher.main(args);
+		IIQDaemonClient d = daemon();
+		if (d == null || !d.runCommand(System.out::println, args)) {
+			Launcher.main(args);
+		}
 		long end = System.nanoTime();
 		long durationMillis = (end - start) / 1000;
 		System.out.println("IIQCommandRunner: end command execution for " + cmd + ". Time spent: " + durationMillis + " millis.");
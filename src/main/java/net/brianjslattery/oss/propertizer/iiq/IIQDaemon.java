@@ -0,0 +1,249 @@
+/**
+ * Copyright © 2021 Brian J Slattery <oss@brnsl.com>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the “Software”), to
+ * deal in the Software without restriction, including without limitation the
+ * rights to use, copy, modify, merge, publish, distribute, sublicense, and/or
+ * sell copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED “AS IS”, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ * 
+ */
+package net.brianjslattery.oss.propertizer.iiq;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.security.MessageDigest;
+import java.util.Base64;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+import net.brianjslattery.oss.propertizer.utilities.Environment;
+
+/**
+ * Long-lived helper that keeps IIQ loaded and runs commands for
+ * propertizer runs on the same host, so they skip the IIQ bootstrap.
+ * Listens on {@value #PORT_VAR} on the loopback interface only, and
+ * every request must carry {@value #TOKEN_VAR}.
+ * 
+ * Protocol, one UTF-8 line each: the token, the argument count, then
+ * each argument in base64. The reply is {@code > line} per output line,
+ * then {@code =} on success or {@code ! message} on failure.
+ * 
+ * @author Brian J Slattery <oss@brnsl.com>
+ * 
+ */
+public final class IIQDaemon implements AutoCloseable {
+	
+	static final String PORT_VAR  = "IIQ_DAEMON_PORT";
+	static final String TOKEN_VAR = "IIQ_DAEMON_TOKEN";
+	
+	static final String OUTPUT  = "> ";
+	static final String SUCCESS = "=";
+	static final String FAILURE = "! ";
+	
+	// Caps a request, so a stray client cannot make us allocate without bound
+	private static final int MAX_ARGS = 10_000;
+	
+	// Only reading the request is timed, so a slow command is not cut off
+	private static final int READ_TIMEOUT_MILLIS = 10_000;
+	
+	private final ServerSocket server;
+	private final byte[] token;
+	private final int readTimeoutMillis;
+	private final ExecutorService connections;
+	private final Semaphore permits;
+	
+	IIQDaemon(int port, String token) throws IOException {
+		this(port, token, READ_TIMEOUT_MILLIS);
+	}
+	
+	IIQDaemon(int port, String token, int readTimeoutMillis) throws IOException {
+		this.server      = new ServerSocket(port, 50, InetAddress.getLoopbackAddress());
+		this.token       = token.getBytes(UTF_8);
+		this.readTimeoutMillis = readTimeoutMillis;
+		this.connections = Executors.newCachedThreadPool(r -> {
+			Thread t = new Thread(r, "iiq-daemon-conn");
+			t.setDaemon(true);
+			return t;
+		});
+		// IIQ is not safe to drive concurrently within one classloader
+		this.permits     = new Semaphore(IIQCommandRunner.getParallelism());
+	}
+	
+	public static void main(String[] args) throws IOException {
+		
+		Environment env = Environment.getDefault();
+		int port     = getPort(env);
+		String token = env.get(TOKEN_VAR);
+		
+		if (port <= 0 || token == null || token.isEmpty()) {
+			System.out.println("IIQDaemon: set " + PORT_VAR + " and " + TOKEN_VAR + " to run the daemon.");
+			System.exit(1);
+		}
+		
+		// Commands received here must never be sent back to a daemon
+		IIQCommandRunner.disableDaemon();
+		
+		try (IIQDaemon daemon = new IIQDaemon(port, token)) {
+			Runtime.getRuntime().addShutdownHook(new Thread(daemon::close, "iiq-daemon-shutdown"));
+			daemon.warmUp();
+			System.out.println("IIQDaemon: listening on " + daemon.getPort() + ".");
+			daemon.serve();
+		}
+		
+	}
+	
+	int getPort() {
+		return server.getLocalPort();
+	}
+	
+	void warmUp() {
+		long start = System.nanoTime();
+		IIQCommandRunner.submitCommand(line -> { }, "encrypt", "propertizer-warm-up").join();
+		System.out.println("IIQDaemon: warmed up in " + TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) + " millis.");
+	}
+	
+	/**
+	 * Accept connections until closed.
+	 */
+	void serve() {
+		while (!server.isClosed()) {
+			try {
+				Socket s = server.accept();
+				connections.execute(() -> handle(s));
+			} catch (IOException e) {
+				if (!server.isClosed()) {
+					System.out.println("IIQDaemon: accept failed: " + e.getMessage());
+				}
+			}
+		}
+	}
+	
+	private void handle(Socket socket) {
+		
+		try (Socket s = socket;
+			 BufferedReader in = new BufferedReader(new InputStreamReader(s.getInputStream(), UTF_8));
+			 Writer out = new BufferedWriter(new OutputStreamWriter(s.getOutputStream(), UTF_8))) {
+			
+			String[] args;
+			try {
+				// A client that never sends a full request must not hold this thread
+				s.setSoTimeout(readTimeoutMillis);
+				args = readRequest(in);
+			} catch (SocketTimeoutException e) {
+				System.out.println("IIQDaemon: closing connection, no complete request within " + readTimeoutMillis + " millis.");
+				return;
+			} catch (IllegalArgumentException e) {
+				reply(out, FAILURE + e.getMessage());
+				return;
+			}
+			
+			String cmd = args[0];
+			long start = System.nanoTime();
+			permits.acquireUninterruptibly();
+			try {
+				IIQCommandRunner.submitCommand(line -> reply(out, OUTPUT + line), args).join();
+				reply(out, SUCCESS);
+				System.out.println("IIQDaemon: ran " + cmd + " in " + TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) + " millis.");
+			} catch (RuntimeException e) {
+				String msg = e.getCause() != null ? e.getCause().getMessage() : e.getMessage();
+				reply(out, FAILURE + String.valueOf(msg).replace('\n', ' '));
+				System.out.println("IIQDaemon: " + cmd + " failed: " + msg);
+			} finally {
+				permits.release();
+			}
+			
+		} catch (IOException | UncheckedIOException e) {
+			System.out.println("IIQDaemon: connection failed: " + e.getMessage());
+		}
+		
+	}
+	
+	private String[] readRequest(BufferedReader in) throws IOException {
+		
+		String t = in.readLine();
+		if (t == null || !MessageDigest.isEqual(token, t.getBytes(UTF_8))) {
+			throw new IllegalArgumentException("Invalid token.");
+		}
+		
+		int argc;
+		try {
+			argc = Integer.parseInt(String.valueOf(in.readLine()));
+		} catch (NumberFormatException e) {
+			throw new IllegalArgumentException("Invalid argument count.");
+		}
+		if (argc < 1 || argc > MAX_ARGS) {
+			throw new IllegalArgumentException("Invalid argument count.");
+		}
+		
+		String[] args = new String[argc];
+		for (int i = 0; i < argc; i++) {
+			String a = in.readLine();
+			if (a == null) {
+				throw new IllegalArgumentException("Truncated request.");
+			}
+			args[i] = new String(Base64.getDecoder().decode(a), UTF_8);
+		}
+		return args;
+		
+	}
+	
+	private static void reply(Writer out, String line) {
+		try {
+			out.write(line);
+			out.write('\n');
+			out.flush();
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+	
+	static int getPort(Environment env) {
+		String v = env.get(PORT_VAR);
+		if (v == null || v.trim().isEmpty()) {
+			return -1;
+		}
+		try {
+			return Integer.parseInt(v.trim());
+		} catch (NumberFormatException e) {
+			System.out.println("IIQDaemon: ignoring invalid " + PORT_VAR + "=[" + v + "]");
+			return -1;
+		}
+	}
+	
+	@Override
+	public void close() {
+		try {
+			server.close();
+		} catch (IOException e) {
+			System.out.println("IIQDaemon: failed to close: " + e.getMessage());
+		}
+		connections.shutdownNow();
+	}
+	
+}
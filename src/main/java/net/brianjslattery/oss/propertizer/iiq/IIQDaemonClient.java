@@ -0,0 +1,138 @@
+/**
+ * Copyright © 2021 Brian J Slattery <oss@brnsl.com>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the “Software”), to
+ * deal in the Software without restriction, including without limitation the
+ * rights to use, copy, modify, merge, publish, distribute, sublicense, and/or
+ * sell copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED “AS IS”, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ * 
+ */
+package net.brianjslattery.oss.propertizer.iiq;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.ConnectException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.util.Base64;
+import java.util.function.Consumer;
+
+import net.brianjslattery.oss.propertizer.utilities.Environment;
+
+/**
+ * Sends commands to an {@link IIQDaemon} on this host. When none is
+ * listening, callers are told to run the command themselves, and the
+ * daemon is not tried again for the rest of the run.
+ * 
+ * @author Brian J Slattery <oss@brnsl.com>
+ * 
+ */
+final class IIQDaemonClient {
+	
+	private static final int CONNECT_TIMEOUT_MILLIS = 250;
+	
+	private final int port;
+	private final String token;
+	private volatile boolean unavailable;
+	
+	IIQDaemonClient(int port, String token) {
+		this.port  = port;
+		this.token = token;
+	}
+	
+	/**
+	 * 
+	 * @return a client, or null when {@value IIQDaemon#PORT_VAR} or {@value IIQDaemon#TOKEN_VAR} is not set
+	 */
+	static IIQDaemonClient from(Environment env) {
+		int port     = IIQDaemon.getPort(env);
+		String token = env.get(IIQDaemon.TOKEN_VAR);
+		if (port <= 0) {
+			return null;
+		}
+		if (token == null || token.isEmpty()) {
+			System.out.println("IIQDaemonClient: " + IIQDaemon.PORT_VAR + " is set without " + IIQDaemon.TOKEN_VAR + ", not using the daemon.");
+			return null;
+		}
+		return new IIQDaemonClient(port, token);
+	}
+	
+	/**
+	 * 
+	 * @return false until a daemon has been found not to be running
+	 */
+	boolean isAvailable() {
+		return !unavailable;
+	}
+	
+	/**
+	 * Run a command on the daemon, passing each line it prints to {@code lines}.
+	 * 
+	 * @return false when no daemon is listening, so the caller should run the command itself
+	 * @throws IllegalStateException when the daemon ran the command and it failed, or the connection broke
+	 */
+	boolean runCommand(Consumer<String> lines, String... args) {
+		
+		if (unavailable) {
+			return false;
+		}
+		
+		try (Socket s = new Socket()) {
+			
+			try {
+				s.connect(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), CONNECT_TIMEOUT_MILLIS);
+			} catch (ConnectException | SocketTimeoutException e) {
+				unavailable = true;
+				System.out.println("IIQDaemonClient: no daemon on port " + port + ", running IIQ commands in process.");
+				return false;
+			}
+			
+			Writer out = new BufferedWriter(new OutputStreamWriter(s.getOutputStream(), UTF_8));
+			out.write(token + "\n");
+			out.write(args.length + "\n");
+			for (String a : args) {
+				out.write(Base64.getEncoder().encodeToString(a.getBytes(UTF_8)) + "\n");
+			}
+			out.flush();
+			
+			BufferedReader in = new BufferedReader(new InputStreamReader(s.getInputStream(), UTF_8));
+			String line;
+			while ((line = in.readLine()) != null) {
+				if (line.startsWith(IIQDaemon.OUTPUT)) {
+					lines.accept(line.substring(IIQDaemon.OUTPUT.length()));
+				} else if (line.equals(IIQDaemon.SUCCESS)) {
+					return true;
+				} else if (line.startsWith(IIQDaemon.FAILURE)) {
+					throw new IllegalStateException("IIQ daemon failed to run " + args[0] + ": " + line.substring(IIQDaemon.FAILURE.length()));
+				}
+			}
+			throw new IllegalStateException("IIQ daemon closed the connection while running " + args[0] + ".");
+			
+		} catch (IOException e) {
+			throw new IllegalStateException("IIQ daemon connection failed while running " + args[0] + ".", e);
+		}
+		
+	}
+	
+}
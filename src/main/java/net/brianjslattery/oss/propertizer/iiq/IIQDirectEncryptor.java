@@ -0,0 +1,121 @@
+/**
+ * Copyright © 2021 Brian J Slattery <oss@brnsl.com>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the “Software”), to
+ * deal in the Software without restriction, including without limitation the
+ * rights to use, copy, modify, merge, publish, distribute, sublicense, and/or
+ * sell copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED “AS IS”, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ * 
+ */
+package net.brianjslattery.oss.propertizer.iiq;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+
+import net.brianjslattery.oss.propertizer.utilities.Environment;
+
+/**
+ * Encrypts through a static IIQ method resolved once per run, rather
+ * than bootstrapping the {@code Launcher} for every value. The method is
+ * named by {@value #API_VAR} as {@code fully.qualified.Class#method}; it
+ * must take the plaintext and return the same {@code keyId:ciphertext}
+ * string that {@code iiq encrypt} prints.
+ * 
+ * This is opt-in: no IIQ method is bound by default, as IIQ's encryption
+ * classes are internal to it. Without {@value #API_VAR}, encryption goes
+ * through the {@code iiq encrypt} command instead.
+ * 
+ * @author Brian J Slattery <oss@brnsl.com>
+ * 
+ */
+final class IIQDirectEncryptor {
+	
+	static final String API_VAR = "IIQ_ENCRYPT_API";
+	
+	// The format printed by iiq encrypt, e.g. 1:aBc+/=
+	private static final Pattern IIQ_FORMAT = Pattern.compile("\\d+:\\S+");
+	
+	private final String api;
+	private final MethodHandle method;
+	
+	private IIQDirectEncryptor(String api, MethodHandle method) {
+		this.api    = api;
+		this.method = method;
+	}
+	
+	/**
+	 * Loads (and so initializes) the IIQ class once.
+	 * 
+	 * @return the encryptor, or null when {@value #API_VAR} is not set
+	 */
+	static IIQDirectEncryptor from(Environment env) {
+		
+		String api = env.get(API_VAR);
+		if (api == null || api.trim().isEmpty()) {
+			return null;
+		}
+		
+		String[] split = api.trim().split("#", 2);
+		if (split.length != 2 || split[0].isEmpty() || split[1].isEmpty()) {
+			throw new IllegalArgumentException(API_VAR + " must be of the form class#method, was [" + api + "]");
+		}
+		
+		long start = System.nanoTime();
+		try {
+			ClassLoader cl = Thread.currentThread().getContextClassLoader();
+			Class<?> c = Class.forName(split[0], true, cl);
+			MethodHandle m = MethodHandles.publicLookup()
+					.findStatic(c, split[1], MethodType.methodType(String.class, String.class));
+			System.out.println("IIQDirectEncryptor: using [" + api + "], initialized in "
+					+ TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) + " millis.");
+			return new IIQDirectEncryptor(api, m);
+		} catch (ReflectiveOperationException e) {
+			throw new IllegalArgumentException("Cannot resolve " + API_VAR + "=[" + api + "]: " + e.getMessage(), e);
+		}
+		
+	}
+	
+	/**
+	 * 
+	 * @return whether {@code s} is a single {@code keyId:ciphertext} value, as printed by {@code iiq encrypt}
+	 */
+	static boolean isIiqFormat(String s) {
+		return IIQ_FORMAT.matcher(s).matches();
+	}
+	
+	String encrypt(String plaintext) {
+		
+		String out;
+		try {
+			out = (String) method.invokeExact(plaintext);
+		} catch (RuntimeException | Error e) {
+			throw e;
+		} catch (Throwable t) {
+			throw new IllegalStateException("IIQ encrypt via [" + api + "] failed.", t);
+		}
+		
+		// Never store something that iiq encrypt would not have produced
+		if (out == null || !isIiqFormat(out.trim())) {
+			throw new IllegalStateException("IIQ encrypt via [" + api + "] did not return keyId:ciphertext.");
+		}
+		return out.trim();
+		
+	}
+	
+}
@@ -0,0 +1,125 @@
+/**
+ * Copyright © 2021 Brian J Slattery <oss@brnsl.com>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the “Software”), to
+ * deal in the Software without restriction, including without limitation the
+ * rights to use, copy, modify, merge, publish, distribute, sublicense, and/or
+ * sell copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED “AS IS”, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ * 
+ */
+package net.brianjslattery.oss.propertizer.iiq;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import java.security.GeneralSecurityException;
+import java.security.SecureRandom;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+
+/**
+ * Per-run memo of plaintext to IIQ encrypted value, so a value shared by
+ * several keys is encrypted once. Plaintexts are never held: entries are
+ * keyed by an HMAC under a random key that only lives for the run.
+ * 
+ * @author Brian J Slattery <oss@brnsl.com>
+ * 
+ */
+final class IIQEncryptMemo {
+	
+	private static final String HMAC = "HmacSHA256";
+	
+	private final SecureRandom random = new SecureRandom();
+	private final Map<String, String> memo = new ConcurrentHashMap<>();
+	private final AtomicInteger requested = new AtomicInteger();
+	private final AtomicInteger encrypted = new AtomicInteger();
+	
+	// guarded by this
+	private byte[] key = newKey();
+	
+	/**
+	 * Count a value asked for, and look it up.
+	 * 
+	 * @return the IIQ encrypted value, or null when it still has to be encrypted
+	 */
+	String get(String plaintext) {
+		requested.incrementAndGet();
+		return memo.get(hash(plaintext));
+	}
+	
+	/**
+	 * Record a value that was actually sent to IIQ.
+	 */
+	void put(String plaintext, String iiqEncrypted) {
+		encrypted.incrementAndGet();
+		memo.put(hash(plaintext), iiqEncrypted);
+	}
+	
+	int getRequested() {
+		return requested.get();
+	}
+	
+	int getEncrypted() {
+		return encrypted.get();
+	}
+	
+	int getAvoided() {
+		return requested.get() - encrypted.get();
+	}
+	
+	void report(StringBuilder rpt) {
+		if (requested.get() > 0) {
+			rpt.append("IIQ encrypt: values=[").append(requested.get())
+			   .append("], encrypted=[").append(encrypted.get())
+			   .append("], avoided=[").append(getAvoided()).append("].\n");
+		}
+	}
+	
+	/**
+	 * Drop every entry and the HMAC key; the memo starts over empty.
+	 */
+	synchronized void wipe() {
+		memo.clear();
+		Arrays.fill(key, (byte) 0);
+		key = newKey();
+		requested.set(0);
+		encrypted.set(0);
+	}
+	
+	private String hash(String plaintext) {
+		try {
+			Mac mac = Mac.getInstance(HMAC);
+			synchronized (this) {
+				mac.init(new SecretKeySpec(key, HMAC));
+			}
+			return Base64.getEncoder().encodeToString(mac.doFinal(plaintext.getBytes(UTF_8)));
+		} catch (GeneralSecurityException e) {
+			throw new IllegalStateException(HMAC + " is not available.", e);
+		}
+	}
+	
+	private byte[] newKey() {
+		byte[] k = new byte[32];
+		random.nextBytes(k);
+		return k;
+	}
+	
+}
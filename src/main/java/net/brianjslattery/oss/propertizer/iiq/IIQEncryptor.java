@@ -22,7 +22,24 @@
  */
 package net.brianjslattery.oss.propertizer.iiq;
 
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.function.Function;
+
+import net.brianjslattery.oss.propertizer.utilities.Environment;
+
 /**
+ * Encrypts with IIQ, through {@link IIQDirectEncryptor} when configured,
+ * otherwise with the {@code iiq encrypt} command. Each distinct value is
+ * encrypted once per run (see {@link IIQEncryptMemo}).
  * 
  * @author Brian J Slattery <oss@brnsl.com>
  * 
@@ -30,10 +47,213 @@ package net.brianjslattery.oss.propertizer.iiq;
  */
 public class IIQEncryptor {
 	
+	private static IIQDirectEncryptor direct;
+	private static boolean resolved;
+	
+	// Whether iiq encrypt prints one value per argument; null until a batch has shown it
+	private static volatile Boolean multiArg;
+	
+	// Per run; wiped by shutdown()
+	private static final IIQEncryptMemo MEMO = new IIQEncryptMemo();
+	
 	public static String encrypt(String in) {
+		String memo = MEMO.get(in);
+		if (memo != null) {
+			return memo;
+		}
+		String out = encryptOne(in);
+		MEMO.put(in, out);
+		return out;
+	}
+	
+	private static String encryptOne(String in) {
+		IIQDirectEncryptor d = direct();
+		if (d != null) {
+			return d.encrypt(in);
+		}
 		return IIQCommandRunner.runCommand("encrypt", in);
 	}
 	
+	/**
+	 * Encrypt a batch of values. Values already encrypted this run come
+	 * from the memo. Without a direct API, the remaining distinct
+	 * plaintexts go to a single {@code iiq encrypt} call (one per worker
+	 * when there is an {@link IIQWorkerPool}), which prints one value per
+	 * argument. If it prints only one value, IIQ encrypted just the first
+	 * argument: that value is kept, the rest are encrypted one per call,
+	 * and later batches go one per call from the start, so a run never
+	 * makes more calls than one per value. Any other output is not
+	 * trusted, and each value is encrypted on its own instead.
+	 * 
+	 * @param src map of key to plaintext
+	 * @return map of key to IIQ encrypted value, sorted by key
+	 */
+	public static SortedMap<String, String> encryptAll(Map<String, String> src) {
+		
+		SortedMap<String, String> out = new TreeMap<>();
+		if (src.isEmpty()) {
+			return out;
+		}
+		
+		Map<String, String> byPlaintext = new HashMap<>();
+		Set<String> missing = new LinkedHashSet<>();
+		for (String v : src.values()) {
+			String memo = MEMO.get(v);
+			if (memo != null) {
+				byPlaintext.put(v, memo);
+			} else {
+				missing.add(v);
+			}
+		}
+		
+		List<String> plaintexts = new ArrayList<>(missing);
+		List<String> encrypted  = encryptDistinct(plaintexts);
+		for (int i = 0; i < plaintexts.size(); i++) {
+			MEMO.put(plaintexts.get(i), encrypted.get(i));
+			byPlaintext.put(plaintexts.get(i), encrypted.get(i));
+		}
+		
+		src.forEach((k, v) -> out.put(k, byPlaintext.get(v)));
+		return out;
+		
+	}
+	
+	/**
+	 * Append how many values were encrypted and how many calls the memo avoided.
+	 */
+	public static void report(StringBuilder rpt) {
+		MEMO.report(rpt);
+	}
+	
+	/**
+	 * Wipe the memo, and what batches showed about {@code iiq encrypt}, at the end of a run.
+	 */
+	public static void shutdown() {
+		MEMO.wipe();
+		multiArg = null;
+	}
+	
+	/**
+	 * 
+	 * @return the encrypted values, in the order of {@code plaintexts}
+	 */
+	private static List<String> encryptDistinct(List<String> plaintexts) {
+		
+		List<String> encrypted = new ArrayList<>(plaintexts.size());
+		if (plaintexts.isEmpty()) {
+			return encrypted;
+		}
+		
+		IIQDirectEncryptor d = direct();
+		if (d != null) {
+			plaintexts.forEach(p -> encrypted.add(d.encrypt(p)));
+			return encrypted;
+		}
+		
+		if (Boolean.FALSE.equals(multiArg)) {
+			plaintexts.forEach(p -> encrypted.add(encryptOne(p)));
+			return encrypted;
+		}
+		
+		// One session per worker, each over its own slice of the values
+		int sessions = Math.min(IIQCommandRunner.getParallelism(), plaintexts.size());
+		List<List<String>> slices = new ArrayList<>(sessions);
+		List<CompletableFuture<List<String>>> pending = new ArrayList<>(sessions);
+		for (int i = 0; i < sessions; i++) {
+			List<String> slice = plaintexts.subList(i * plaintexts.size() / sessions, (i + 1) * plaintexts.size() / sessions);
+			slices.add(slice);
+			pending.add(encryptInOneSession(slice));
+		}
+		
+		for (int i = 0; i < sessions; i++) {
+			encrypted.addAll(completeSlice(slices.get(i), join(pending.get(i)), IIQEncryptor::encryptOne));
+		}
+		return encrypted;
+		
+	}
+	
+	/**
+	 * Match a batch's output to its plaintexts, encrypting with {@code one}
+	 * whatever the batch did not.
+	 * 
+	 * @param values the encrypted values the batch printed, in order
+	 * @return the encrypted values, in the order of {@code slice}
+	 */
+	static List<String> completeSlice(List<String> slice, List<String> values, Function<String, String> one) {
+		
+		if (values.size() == slice.size()) {
+			if (slice.size() > 1) {
+				multiArg = Boolean.TRUE;
+			}
+			return values;
+		}
+		
+		List<String> out = new ArrayList<>(slice.size());
+		int from = 0;
+		if (values.size() == 1) {
+			multiArg = Boolean.FALSE;
+			System.out.println("IIQEncryptor: iiq encrypt only encrypted its first argument; encrypting the other "
+					+ (slice.size() - 1) + " values one at a time.");
+			out.add(values.get(0));
+			from = 1;
+		} else {
+			System.out.println("IIQEncryptor: batch encrypt did not return one value per plaintext; encrypting "
+					+ slice.size() + " values one at a time.");
+		}
+		for (String p : slice.subList(from, slice.size())) {
+			out.add(one.apply(p));
+		}
+		return out;
+		
+	}
+	
+	/**
+	 * 
+	 * @return completes with the encrypted values printed, in argument order
+	 */
+	private static CompletableFuture<List<String>> encryptInOneSession(List<String> plaintexts) {
+		
+		String[] args = new String[plaintexts.size() + 1];
+		args[0] = "encrypt";
+		for (int i = 0; i < plaintexts.size(); i++) {
+			args[i + 1] = plaintexts.get(i);
+		}
+		
+		// Only encrypted values are kept, not the rest of the output
+		List<String> values = new ArrayList<>();
+		return IIQCommandRunner.submitCommand(line -> {
+			if (IIQDirectEncryptor.isIiqFormat(line.trim())) {
+				values.add(line.trim());
+			}
+		}, args).thenApply(v -> values);
+		
+	}
+	
+	private static <T> T join(CompletableFuture<T> f) {
+		try {
+			return f.join();
+		} catch (CompletionException e) {
+			if (e.getCause() instanceof RuntimeException) {
+				throw (RuntimeException) e.getCause();
+			}
+			throw e;
+		}
+	}
+	
+	/**
+	 * Resolved on first use and kept for the rest of the run.
+	 */
+	private static synchronized IIQDirectEncryptor direct() {
+		if (!resolved) {
+			direct   = IIQDirectEncryptor.from(Environment.getDefault());
+			resolved = true;
+			if (direct == null) {
+				System.out.println("IIQEncryptor: " + IIQDirectEncryptor.API_VAR + " not set; encrypting with the iiq encrypt command.");
+			}
+		}
+		return direct;
+	}
+	
 	private IIQEncryptor() {
 	}
 
@@ -0,0 +1,217 @@
+/**
+ * Copyright © 2021 Brian J Slattery <oss@brnsl.com>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the “Software”), to
+ * deal in the Software without restriction, including without limitation the
+ * rights to use, copy, modify, merge, publish, distribute, sublicense, and/or
+ * sell copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED “AS IS”, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ * 
+ */
+package net.brianjslattery.oss.propertizer.iiq;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Several imports run from one console session. The files are written
+ * to a console script, one {@code import} each, between {@code echo}
+ * markers; the markers in the streamed output give each file's timing,
+ * and lines that look like errors between them mark the file failed.
+ * When the console prints no markers at all, each file's result is
+ * {@link Status#UNKNOWN}, or failed if the console printed an error.
+ * 
+ * @author Brian J Slattery <oss@brnsl.com>
+ * 
+ */
+final class IIQImportBatch implements Consumer<String> {
+	
+	static final String MARKER = "##propertizer-import";
+	
+	private static final Pattern MARKER_LINE = Pattern.compile(Pattern.quote(MARKER) + " (begin|end) (\\d+)");
+	// An "error" line, or an exception class at the start of the line. Logged (and recovered) stack
+	// traces start with a timestamp or level instead, and their frames with "at" or "Caused by:"
+	private static final Pattern ERROR_LINE  = Pattern.compile(
+			"^\\s*(?i:error)\\b.*|^(?:[a-z_$][\\w$]*\\.)+[A-Z][\\w$]*(?:Exception|Error)(?::.*)?");
+	
+	enum Status { PENDING, RUNNING, OK, FAILED, UNKNOWN }
+	
+	private final List<Path> files;
+	private final Status[] status;
+	private final long[] startNanos;
+	private final long[] endNanos;
+	private final Consumer<String> out;
+	
+	private int current = -1;
+	private boolean sawMarker;
+	private boolean sawError;
+	
+	/**
+	 * 
+	 * @param files the files, in import order
+	 * @param out where command output goes, without the markers
+	 */
+	IIQImportBatch(List<Path> files, Consumer<String> out) {
+		this.files      = Collections.unmodifiableList(new ArrayList<>(files));
+		this.status     = new Status[files.size()];
+		this.startNanos = new long[files.size()];
+		this.endNanos   = new long[files.size()];
+		this.out        = out;
+		Arrays.fill(status, Status.PENDING);
+	}
+	
+	/**
+	 * 
+	 * @return the console script importing every file in order
+	 */
+	String script() {
+		StringBuilder sb = new StringBuilder();
+		for (int i = 0; i < files.size(); i++) {
+			sb.append("echo ").append(MARKER).append(" begin ").append(i).append('\n')
+			  .append("import ").append(quote(files.get(i).toAbsolutePath().toString())).append('\n')
+			  .append("echo ").append(MARKER).append(" end ").append(i).append('\n');
+		}
+		return sb.toString();
+	}
+	
+	/**
+	 * Write the script to a temp file, to be run with {@code source}.
+	 */
+	Path writeScript() throws IOException {
+		Path script = Files.createTempFile("propertizer-import-", ".txt");
+		Files.writeString(script, script());
+		return script;
+	}
+	
+	@Override
+	public void accept(String line) {
+		long now = System.nanoTime();
+		Matcher m = MARKER_LINE.matcher(line.trim());
+		if (m.matches()) {
+			int i = Integer.parseInt(m.group(2));
+			if (i < 0 || i >= files.size()) {
+				return;
+			}
+			sawMarker = true;
+			if ("begin".equals(m.group(1))) {
+				current       = i;
+				startNanos[i] = now;
+				status[i]     = Status.RUNNING;
+			} else {
+				endNanos[i] = now;
+				if (status[i] == Status.RUNNING) {
+					status[i] = Status.OK;
+				}
+				current = -1;
+			}
+			return;
+		}
+		if (isErrorLine(line)) {
+			sawError = true;
+			if (current >= 0) {
+				status[current] = Status.FAILED;
+			}
+		}
+		out.accept(line);
+	}
+	
+	/**
+	 * Called once the console has returned; a file still running did not finish.
+	 */
+	void finish() {
+		if (current >= 0) {
+			endNanos[current] = System.nanoTime();
+			status[current]   = Status.FAILED;
+			current = -1;
+		}
+		if (!sawMarker) {
+			Arrays.fill(status, sawError ? Status.FAILED : Status.UNKNOWN);
+		}
+	}
+	
+	Status getStatus(int i) {
+		return status[i];
+	}
+	
+	/**
+	 * 
+	 * @return whether any file failed or was not reached; an {@link Status#UNKNOWN} file has not failed
+	 */
+	boolean hasFailures() {
+		for (Status s : status) {
+			if (s != Status.OK && s != Status.UNKNOWN) {
+				return true;
+			}
+		}
+		return false;
+	}
+	
+	/**
+	 * 
+	 * @return whether every file is known to have imported without an error
+	 */
+	boolean isSuccess() {
+		for (Status s : status) {
+			if (s != Status.OK) {
+				return false;
+			}
+		}
+		return true;
+	}
+	
+	/**
+	 * 
+	 * @return whether the console printed any marker, so per-file results are known
+	 */
+	boolean hasMarkers() {
+		return sawMarker;
+	}
+	
+	void report(StringBuilder rpt) {
+		for (int i = 0; i < files.size(); i++) {
+			rpt.append("IIQ import: file=[").append(files.get(i))
+			   .append("], status=[").append(status[i]);
+			if (status[i] != Status.PENDING && status[i] != Status.UNKNOWN) {
+				rpt.append("], millis=[").append((endNanos[i] - startNanos[i]) / 1_000_000);
+			}
+			rpt.append("].\n");
+		}
+	}
+	
+	/**
+	 * 
+	 * @return whether a line the console printed reports an error
+	 */
+	static boolean isErrorLine(String line) {
+		return ERROR_LINE.matcher(line).matches();
+	}
+	
+	/**
+	 * 
+	 * @return {@code path} as one console argument, quoted when it holds whitespace
+	 */
+	static String quote(String path) {
+		return path.chars().anyMatch(Character::isWhitespace) ? '"' + path + '"' : path;
+	}
+	
+}
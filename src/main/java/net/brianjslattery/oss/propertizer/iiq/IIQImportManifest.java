@@ -0,0 +1,164 @@
+/**
+ * Copyright © 2021 Brian J Slattery <oss@brnsl.com>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the “Software”), to
+ * deal in the Software without restriction, including without limitation the
+ * rights to use, copy, modify, merge, publish, distribute, sublicense, and/or
+ * sell copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED “AS IS”, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ * 
+ */
+package net.brianjslattery.oss.propertizer.iiq;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Properties;
+
+import net.brianjslattery.oss.propertizer.utilities.Environment;
+
+/**
+ * Content hashes of the files last imported into each database, so an
+ * import whose content is already applied can be skipped. Entries are
+ * keyed by a hash of the database URL (which may hold credentials) and
+ * the file's absolute path.
+ * 
+ * @author Brian J Slattery <oss@brnsl.com>
+ * 
+ */
+final class IIQImportManifest {
+	
+	static final String PATH_VAR = "IIQ_IMPORT_MANIFEST";
+	
+	private static final String DEFAULT_NAME = ".kms-propertizer-imports.properties";
+	private static final String SHA_256      = "SHA-256";
+	private static final int DB_KEY_LEN      = 16;
+	
+	private final Path path;
+	private final String dbKey;
+	private final Properties entries = new Properties();
+	private final Map<Path, String> hashes = new HashMap<>();
+	private boolean changed;
+	
+	IIQImportManifest(Path path, String dbUrl) throws IOException {
+		this.path  = path;
+		this.dbKey = hex(digest().digest(dbUrl.getBytes(UTF_8))).substring(0, DB_KEY_LEN);
+		if (Files.exists(path)) {
+			try (InputStream is = Files.newInputStream(path)) {
+				entries.load(is);
+			}
+		}
+	}
+	
+	/**
+	 * 
+	 * @return the manifest at {@value #PATH_VAR}, or in the user's home directory
+	 */
+	static IIQImportManifest load(Environment env, String dbUrl) throws IOException {
+		String p = env.get(PATH_VAR);
+		Path path = p != null && !p.isEmpty() ? Paths.get(p) : Paths.get(System.getProperty("user.home"), DEFAULT_NAME);
+		System.out.println("IIQImportManifest: using " + path.toAbsolutePath());
+		return new IIQImportManifest(path, dbUrl);
+	}
+	
+	/**
+	 * 
+	 * @return whether this exact content was already imported into the database
+	 */
+	boolean isApplied(Path file) {
+		return hash(file).equals(entries.getProperty(key(file)));
+	}
+	
+	/**
+	 * Record a file as imported, with the content it had when first hashed this run.
+	 */
+	void record(Path file) {
+		entries.setProperty(key(file), hash(file));
+		changed = true;
+	}
+	
+	/**
+	 * Write the manifest if anything was recorded. It is replaced in one
+	 * move, so a failed write never loses earlier entries.
+	 */
+	void save() throws IOException {
+		if (!changed) {
+			return;
+		}
+		Path dir = path.toAbsolutePath().getParent();
+		Files.createDirectories(dir);
+		Path tmp = Files.createTempFile(dir, path.getFileName().toString(), ".tmp");
+		try {
+			try (OutputStream os = Files.newOutputStream(tmp)) {
+				entries.store(os, "IIQ imports applied, by database and file");
+			}
+			Files.move(tmp, path, StandardCopyOption.REPLACE_EXISTING);
+		} finally {
+			Files.deleteIfExists(tmp);
+		}
+		changed = false;
+		System.out.println("IIQImportManifest: saved " + path);
+	}
+	
+	private String key(Path file) {
+		return dbKey + "|" + file.toAbsolutePath().normalize();
+	}
+	
+	/**
+	 * Hashed once per run, so what is recorded is what was compared.
+	 */
+	private String hash(Path file) {
+		return hashes.computeIfAbsent(file.toAbsolutePath().normalize(), f -> {
+			MessageDigest md = digest();
+			byte[] buf = new byte[8192];
+			try (InputStream is = Files.newInputStream(f)) {
+				for (int n; (n = is.read(buf)) > 0; ) {
+					md.update(buf, 0, n);
+				}
+			} catch (IOException e) {
+				throw new UncheckedIOException("Could not hash import file " + f, e);
+			}
+			return hex(md.digest());
+		});
+	}
+	
+	private static MessageDigest digest() {
+		try {
+			return MessageDigest.getInstance(SHA_256);
+		} catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException(SHA_256 + " is not available", e);
+		}
+	}
+	
+	private static String hex(byte[] bytes) {
+		StringBuilder sb = new StringBuilder(bytes.length * 2);
+		for (byte b : bytes) {
+			sb.append(Character.forDigit((b >> 4) & 0xf, 16)).append(Character.forDigit(b & 0xf, 16));
+		}
+		return sb.toString();
+	}
+	
+}
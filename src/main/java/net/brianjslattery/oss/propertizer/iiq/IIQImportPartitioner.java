@@ -0,0 +1,413 @@
+/**
+ * Copyright © 2021 Brian J Slattery <oss@brnsl.com>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the “Software”), to
+ * deal in the Software without restriction, including without limitation the
+ * rights to use, copy, modify, merge, publish, distribute, sublicense, and/or
+ * sell copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED “AS IS”, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ * 
+ */
+package net.brianjslattery.oss.propertizer.iiq;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
+
+import javax.xml.namespace.QName;
+import javax.xml.stream.XMLEventFactory;
+import javax.xml.stream.XMLEventReader;
+import javax.xml.stream.XMLEventWriter;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLOutputFactory;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.events.Attribute;
+import javax.xml.stream.events.DTD;
+import javax.xml.stream.events.StartElement;
+import javax.xml.stream.events.XMLEvent;
+
+import net.brianjslattery.oss.propertizer.utilities.Environment;
+
+/**
+ * Splits a {@code <sailpoint>} import bundle into one partition per object
+ * type, streaming it with StAX so the bundle is never held in memory, and
+ * imports the partitions concurrently through {@link IIQCommandRunner}.
+ * 
+ * A partition depends on another when one of its objects links to an
+ * object defined in the other; it starts only once those have imported,
+ * and is skipped if one of them failed. A link is a {@code <Reference>}
+ * (or other {@code *Ref} element) naming the object by {@code name} or
+ * {@code id}, of the referenced class when it has one, or any attribute
+ * value equal to the name or id of an object of another type, such as a
+ * rule named in an attributes map. This over-orders rather than misses a
+ * link; only links held in element text, such as names inside a rule's
+ * source, are not seen. Within a partition, objects keep their document
+ * order. Bundles with an {@code <ImportAction>}, a single object, or links
+ * that form a cycle between types are not partitioned.
+ * 
+ * @author Brian J Slattery <oss@brnsl.com>
+ * 
+ */
+final class IIQImportPartitioner {
+	
+	static final String PARALLEL_VAR = "IIQ_IMPORT_PARALLEL";
+	
+	private static final String ROOT          = "sailpoint";
+	private static final String REFERENCE     = "Reference";
+	private static final String IMPORT_ACTION = "ImportAction";
+	private static final String REPORT_CDATA  = "http://java.sun.com/xml/stream/properties/report-cdata-event";
+	private static final String REF_SFX       = "Ref";
+	private static final QName NAME           = new QName("name");
+	private static final QName ID             = new QName("id");
+	private static final QName CLASS          = new QName("class");
+	
+	// The type of a link that names no class, so matches an object of any type
+	private static final String ANY_TYPE = "";
+	
+	enum Status { PENDING, RUNNING, OK, FAILED, SKIPPED }
+	
+	static final class Partition {
+		
+		final String type;
+		final Path file;
+		final Set<String> dependsOn = new TreeSet<>();
+		int objects;
+		
+		// Written by the thread the import completes on, read after every import has completed
+		volatile Status status = Status.PENDING;
+		volatile long millis;
+		
+		// [type or ANY_TYPE, name or id]
+		private final Set<List<String>> links = new HashSet<>();
+		private Writer raw;
+		private XMLEventWriter writer;
+		
+		Partition(String type, Path file) {
+			this.type = type;
+			this.file = file;
+		}
+		
+	}
+	
+	static boolean isEnabled(Environment env) {
+		return Boolean.parseBoolean(env.get(PARALLEL_VAR));
+	}
+	
+	/**
+	 * 
+	 * @param xml the bundle to split
+	 * @param dir where the partition files are written
+	 * @return the partitions in dependency order, or an empty list when the bundle should be imported whole
+	 */
+	static List<Partition> partition(Path xml, Path dir) throws IOException, XMLStreamException {
+		
+		XMLInputFactory in = XMLInputFactory.newFactory();
+		// The DOCTYPE is copied, never resolved
+		in.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+		in.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+		if (in.isPropertySupported(REPORT_CDATA)) {
+			// Keeps rule sources readable in the partition files; the text is equivalent either way
+			in.setProperty(REPORT_CDATA, true);
+		}
+		XMLOutputFactory out = XMLOutputFactory.newFactory();
+		XMLEventFactory events = XMLEventFactory.newFactory();
+		
+		Map<String, Partition> parts = new LinkedHashMap<>();
+		Map<String, Set<String>> defined = new HashMap<>();
+		String doctype = null;
+		
+		try (InputStream is = Files.newInputStream(xml)) {
+			XMLEventReader reader = in.createXMLEventReader(is);
+			try {
+				int depth = 0;
+				Partition current = null;
+				while (reader.hasNext()) {
+					XMLEvent e = reader.nextEvent();
+					if (e.getEventType() == XMLEvent.DTD) {
+						doctype = ((DTD) e).getDocumentTypeDeclaration();
+						continue;
+					}
+					if (e.isStartElement()) {
+						StartElement s = e.asStartElement();
+						String local = s.getName().getLocalPart();
+						depth++;
+						if (depth == 1 && !ROOT.equals(local)) {
+							return whole("a single " + local);
+						}
+						if (depth == 2) {
+							if (IMPORT_ACTION.equals(local)) {
+								return whole("an ImportAction");
+							}
+							current = parts.get(local);
+							if (current == null) {
+								current = open(local, dir, doctype, out);
+								parts.put(local, current);
+							}
+							current.objects++;
+							Set<String> keys = defined.computeIfAbsent(local, k -> new HashSet<>());
+							addIfPresent(value(s, NAME), keys);
+							addIfPresent(value(s, ID),   keys);
+						} else if (depth > 2) {
+							addLinks(s, current.links);
+						}
+					}
+					if (depth >= 2) {
+						current.writer.add(e);
+					}
+					if (e.isEndElement()) {
+						if (depth == 2) {
+							current.writer.add(events.createCharacters("\n"));
+						}
+						depth--;
+					}
+				}
+			} finally {
+				reader.close();
+			}
+		} finally {
+			for (Partition p : parts.values()) {
+				close(p);
+			}
+		}
+		
+		if (parts.size() < 2) {
+			return whole(parts.isEmpty() ? "no objects" : "one object type");
+		}
+		
+		// Only links to objects in this bundle order the import; others are already in the database
+		for (Partition p : parts.values()) {
+			for (List<String> link : p.links) {
+				String type = link.get(0);
+				defined.forEach((t, keys) -> {
+					if (!t.equals(p.type) && (type.equals(ANY_TYPE) || type.equals(t)) && keys.contains(link.get(1))) {
+						p.dependsOn.add(t);
+					}
+				});
+			}
+		}
+		
+		List<Partition> ordered = new ArrayList<>();
+		Set<String> visiting = new HashSet<>();
+		Set<String> visited  = new HashSet<>();
+		for (Partition p : parts.values()) {
+			if (!visit(p, parts, visiting, visited, ordered)) {
+				return whole("references that form a cycle between object types");
+			}
+		}
+		return ordered;
+	}
+	
+	/**
+	 * Import the partitions, each one as soon as the partitions it depends on have imported.
+	 * 
+	 * @param ordered partitions in dependency order, as {@link #partition(Path, Path)} returns them
+	 * @return whether every partition imported without an error
+	 */
+	static boolean importAll(List<Partition> ordered, IIqConsoleCredentials creds) {
+		
+		String quotedCreds = '"' + creds.getPassword() + '"';
+		AtomicInteger finished = new AtomicInteger();
+		Map<String, CompletableFuture<Void>> done = new HashMap<>();
+		
+		System.out.println("IIQImportPartitioner: importing " + ordered.size() + " partitions with "
+				+ IIQCommandRunner.getParallelism() + " console workers.");
+		
+		for (Partition p : ordered) {
+			CompletableFuture<?>[] deps = p.dependsOn.stream().map(done::get).toArray(CompletableFuture[]::new);
+			CompletableFuture<Void> f = CompletableFuture.allOf(deps).handle((v, t) -> t == null).thenCompose(depsOk -> {
+				if (!depsOk) {
+					p.status = Status.SKIPPED;
+					int n = finished.incrementAndGet();
+					System.out.println("IIQImportPartitioner: partition [" + p.type + "] skipped, a partition it depends on failed ("
+							+ n + " of " + ordered.size() + ").");
+					return CompletableFuture.failedFuture(new IllegalStateException("Skipped " + p.type));
+				}
+				return run(p, quotedCreds, creds.getUsername(), finished, ordered.size());
+			});
+			done.put(p.type, f);
+		}
+		
+		boolean ok = true;
+		for (Partition p : ordered) {
+			ok &= done.get(p.type).handle((v, t) -> t == null).join();
+		}
+		return ok;
+	}
+	
+	static void report(Path xml, List<Partition> ordered, StringBuilder rpt) {
+		for (Partition p : ordered) {
+			rpt.append("IIQ import partition: file=[").append(xml)
+			   .append("], type=[").append(p.type)
+			   .append("], objects=[").append(p.objects)
+			   .append("], dependsOn=[").append(String.join(", ", p.dependsOn))
+			   .append("], status=[").append(p.status)
+			   .append("], millis=[").append(p.millis).append("].\n");
+		}
+	}
+	
+	/**
+	 * Delete the partition files and their directory.
+	 */
+	static void delete(Path dir) {
+		try (Stream<Path> files = Files.walk(dir)) {
+			files.sorted(Comparator.reverseOrder()).forEach(f -> {
+				try {
+					Files.deleteIfExists(f);
+				} catch (IOException e) {
+					throw new UncheckedIOException(e);
+				}
+			});
+		} catch (IOException | UncheckedIOException e) {
+			System.out.println("IIQImportPartitioner: could not delete " + dir + ". Message: " + e.getMessage());
+		}
+	}
+	
+	private static CompletableFuture<Void> run(Partition p, String quotedCreds, String user, AtomicInteger finished, int total) {
+		
+		String[] args = new String[]{ "console", "-c", "import " + IIQImportBatch.quote(p.file.toString()), "-u", user, "-p", quotedCreds };
+		String prefix = "[" + p.type + "] ";
+		long start = System.nanoTime();
+		p.status = Status.RUNNING;
+		System.out.println("IIQImportPartitioner: partition [" + p.type + "] started: " + p.objects + " objects.");
+		
+		return IIQCommandRunner.submitCommand(line -> {
+			if (IIQImportBatch.isErrorLine(line)) {
+				p.status = Status.FAILED;
+			}
+			System.out.println(prefix + line);
+		}, args).handle((v, t) -> {
+			p.millis = (System.nanoTime() - start) / 1_000_000;
+			if (t != null) {
+				System.out.println("IIQImportPartitioner: partition [" + p.type + "] failed. Message: " + t.getMessage());
+				p.status = Status.FAILED;
+			} else if (p.status == Status.RUNNING) {
+				p.status = Status.OK;
+			}
+			int n = finished.incrementAndGet();
+			System.out.println("IIQImportPartitioner: partition [" + p.type + "] " + p.status + ": " + p.objects
+					+ " objects in " + p.millis + " millis (" + n + " of " + total + ").");
+			if (p.status != Status.OK) {
+				throw new IllegalStateException("Failed to import " + p.type);
+			}
+			return null;
+		});
+	}
+	
+	private static boolean visit(Partition p, Map<String, Partition> parts, Set<String> visiting,
+			Set<String> visited, List<Partition> ordered) {
+		if (visited.contains(p.type)) {
+			return true;
+		}
+		if (!visiting.add(p.type)) {
+			return false;
+		}
+		for (String dep : p.dependsOn) {
+			if (!visit(parts.get(dep), parts, visiting, visited, ordered)) {
+				return false;
+			}
+		}
+		visiting.remove(p.type);
+		visited.add(p.type);
+		ordered.add(p);
+		return true;
+	}
+	
+	private static Partition open(String type, Path dir, String doctype, XMLOutputFactory out)
+			throws IOException, XMLStreamException {
+		Partition p = new Partition(type, dir.resolve(type + ".xml"));
+		p.raw = Files.newBufferedWriter(p.file, UTF_8);
+		p.raw.write("<?xml version='1.0' encoding='UTF-8'?>\n");
+		if (doctype != null) {
+			p.raw.write(doctype);
+			p.raw.write('\n');
+		}
+		p.raw.write("<" + ROOT + ">\n");
+		p.writer = out.createXMLEventWriter(p.raw);
+		return p;
+	}
+	
+	private static void close(Partition p) throws IOException {
+		try {
+			p.writer.flush();
+			p.raw.write("</" + ROOT + ">\n");
+		} catch (XMLStreamException e) {
+			throw new IOException("Could not write partition " + p.file, e);
+		} finally {
+			p.raw.close();
+		}
+	}
+	
+	private static List<Partition> whole(String reason) {
+		System.out.println("IIQImportPartitioner: importing the file whole, it has " + reason + ".");
+		return List.of();
+	}
+	
+	/**
+	 * A reference links by its {@code name} and {@code id}, to its class when
+	 * it names one; every other attribute value is a link to an object of any type.
+	 */
+	private static void addLinks(StartElement s, Set<List<String>> links) {
+		String local = s.getName().getLocalPart();
+		String cls   = value(s, CLASS);
+		if (cls != null && (REFERENCE.equals(local) || local.endsWith(REF_SFX))) {
+			String type = cls.substring(cls.lastIndexOf('.') + 1);
+			String name = value(s, NAME);
+			String id   = value(s, ID);
+			if (name != null) {
+				links.add(List.of(type, name));
+			}
+			if (id != null) {
+				links.add(List.of(type, id));
+			}
+			return;
+		}
+		for (Iterator<Attribute> it = s.getAttributes(); it.hasNext(); ) {
+			links.add(List.of(ANY_TYPE, it.next().getValue()));
+		}
+	}
+	
+	private static void addIfPresent(String v, Set<String> set) {
+		if (v != null) {
+			set.add(v);
+		}
+	}
+	
+	private static String value(StartElement s, QName name) {
+		Attribute a = s.getAttributeByName(name);
+		return a != null ? a.getValue() : null;
+	}
+	
+	private IIQImportPartitioner() {
+	}
+	
+}
@@ -22,6 +22,24 @@
  */
 package net.brianjslattery.oss.propertizer.iiq;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import javax.xml.stream.XMLStreamException;
+
+import net.brianjslattery.oss.propertizer.utilities.Environment;
+
 /**
  * 
  * @author Brian J Slattery <oss@brnsl.com>
@@ -30,12 +48,204 @@ package net.brianjslattery.oss.propertizer.iiq;
  */
 public class IIQImporter {
 	
-	public static void runImport(String file, IIqConsoleCredentials creds) {
+	private static final String XML_SFX      = ".xml";
+	private static final String MANIFEST_SFX = ".manifest";
+	
+	/**
+	 * Import one file with the console's {@code import} command.
+	 * 
+	 * @return whether the console printed no error
+	 */
+	public static boolean runImport(String file, IIqConsoleCredentials creds) {
 		String quotedCreds = '"' + creds.getPassword() + '"';
 		String[] args = new String[]{ "console", "-c", "import", file, "-u", creds.getUsername(), "-p", "<ommitted>" };
 		System.out.println("IIQImporter: Calling import with args: " + String.join(" ", args));
 		args[7] = quotedCreds;
-		IIQCommandRunner.run(args);
+		boolean[] failed = new boolean[1];
+		long start = System.nanoTime();
+		IIQCommandRunner.runCommand(line -> {
+			if (IIQImportBatch.isErrorLine(line)) {
+				failed[0] = true;
+			}
+			System.out.println(line);
+		}, args);
+		long millis = (System.nanoTime() - start) / 1_000_000;
+		System.out.println("IIQImporter: Import of " + file + " " + (failed[0] ? "failed" : "done") + " in " + millis + " millis.");
+		return !failed[0];
+	}
+	
+	/**
+	 * Import several files from one console session, in order, so the
+	 * console is started and logged in once.
+	 * 
+	 * @param rpt per-file status and timing is appended here
+	 * @param imported given each file known to have imported without an error
+	 * @return whether no file failed; without console markers, results are unknown and not failures
+	 */
+	public static boolean runImports(List<Path> files, IIqConsoleCredentials creds, StringBuilder rpt, Consumer<Path> imported) {
+		IIQImportBatch batch = new IIQImportBatch(files, System.out::println);
+		Path script;
+		try {
+			script = batch.writeScript();
+		} catch (IOException e) {
+			throw new UncheckedIOException("Could not write the IIQ import script", e);
+		}
+		try {
+			String quotedCreds = '"' + creds.getPassword() + '"';
+			String[] args = new String[]{ "console", "-c", "source " + IIQImportBatch.quote(script.toString()), "-u", creds.getUsername(), "-p", "<ommitted>" };
+			System.out.println("IIQImporter: Importing " + files.size() + " files with args: " + String.join(" ", args));
+			args[6] = quotedCreds;
+			long start = System.nanoTime();
+			try {
+				IIQCommandRunner.runCommand(batch, args);
+			} finally {
+				batch.finish();
+			}
+			long millis = (System.nanoTime() - start) / 1_000_000;
+			System.out.println("IIQImporter: Console session for " + files.size() + " files took " + millis + " millis.");
+		} finally {
+			try {
+				Files.deleteIfExists(script);
+			} catch (IOException e) {
+				System.out.println("IIQImporter: Could not delete import script " + script + ". Message: " + e.getMessage());
+			}
+		}
+		if (!batch.hasMarkers()) {
+			System.out.println("IIQImporter: The console printed no import markers; per-file results are unknown"
+					+ " and the files are not recorded as imported.");
+		}
+		batch.report(rpt);
+		for (int i = 0; i < files.size(); i++) {
+			if (batch.getStatus(i) == IIQImportBatch.Status.OK) {
+				imported.accept(files.get(i));
+			}
+		}
+		return !batch.hasFailures();
+	}
+	
+	/**
+	 * 
+	 * @return whether {@value IIQImportPartitioner#PARALLEL_VAR} asks for partitioned imports
+	 */
+	public static boolean isPartitioned(Environment env) {
+		return IIQImportPartitioner.isEnabled(env);
+	}
+	
+	/**
+	 * Split one bundle into a partition per object type and import the
+	 * partitions concurrently, keeping dependent partitions in order. A bundle
+	 * that cannot be partitioned is imported whole, and so is every bundle when
+	 * commands cannot run concurrently, as each partition would then pay its own
+	 * console start-up and login one after another.
+	 * 
+	 * @param rpt per-partition status and timing is appended here
+	 * @param imported given the file once every partition imported without an error
+	 * @return whether no partition failed
+	 */
+	public static boolean runPartitionedImport(Path file, IIqConsoleCredentials creds, StringBuilder rpt, Consumer<Path> imported) {
+		if (!IIQCommandRunner.isConcurrent()) {
+			System.out.println("IIQImporter: " + IIQImportPartitioner.PARALLEL_VAR + " needs " + IIQWorkerPool.WORKERS_VAR
+					+ " above 1 or an IIQ daemon; importing " + file + " whole.");
+			return runImports(List.of(file), creds, rpt, imported);
+		}
+		Path dir = null;
+		try {
+			dir = Files.createTempDirectory("propertizer-partitions-");
+			long start = System.nanoTime();
+			List<IIQImportPartitioner.Partition> parts = IIQImportPartitioner.partition(file, dir);
+			long millis = (System.nanoTime() - start) / 1_000_000;
+			if (parts.isEmpty()) {
+				return runImports(List.of(file), creds, rpt, imported);
+			}
+			System.out.println("IIQImporter: Split " + file + " into " + parts.size() + " partitions in " + millis + " millis.");
+			boolean ok = IIQImportPartitioner.importAll(parts, creds);
+			IIQImportPartitioner.report(file, parts, rpt);
+			if (ok) {
+				imported.accept(file);
+			}
+			return ok;
+		} catch (IOException e) {
+			throw new UncheckedIOException("Could not partition " + file, e);
+		} catch (XMLStreamException e) {
+			throw new IllegalArgumentException("Could not parse " + file + ": " + e.getMessage(), e);
+		} finally {
+			if (dir != null) {
+				IIQImportPartitioner.delete(dir);
+			}
+		}
+	}
+	
+	/**
+	 * Resolve what {@code -import} was given into the files to import, in order.
+	 * The value is a comma separated list; each entry is a directory (its XML files,
+	 * by name), a manifest ending in {@value #MANIFEST_SFX} listing XML files and
+	 * directories one per line, relative to the manifest, or any other file, which
+	 * is imported as is. Blank lines and {@code #} comments are skipped, and a file
+	 * listed twice is imported once, at its first position.
+	 */
+	public static List<Path> resolveFiles(String spec) {
+		Set<Path> files = new LinkedHashSet<>();
+		for (String entry : spec.split(",")) {
+			entry = entry.trim();
+			if (entry.isEmpty()) {
+				continue;
+			}
+			Path p = Paths.get(entry);
+			if (isManifest(p) && !Files.isDirectory(p)) {
+				addManifest(p, files);
+			} else {
+				addXmlOrDirectory(p, files);
+			}
+		}
+		if (files.isEmpty()) {
+			throw new IllegalArgumentException("No XML files to import in [" + spec + "]");
+		}
+		return new ArrayList<>(files);
+	}
+	
+	private static void addManifest(Path manifest, Set<Path> files) {
+		if (!Files.isRegularFile(manifest)) {
+			throw new IllegalArgumentException("Import manifest does not exist: " + manifest);
+		}
+		Path base = manifest.toAbsolutePath().getParent();
+		try (Stream<String> lines = Files.lines(manifest)) {
+			for (String line : lines.map(String::trim).collect(Collectors.toList())) {
+				if (line.isEmpty() || line.startsWith("#")) {
+					continue;
+				}
+				Path p = base.resolve(line);
+				if (!isXml(p) && !Files.isDirectory(p)) {
+					throw new IllegalArgumentException("Manifest " + manifest + " lists a file that is not XML: " + line);
+				}
+				addXmlOrDirectory(p, files);
+			}
+		} catch (IOException e) {
+			throw new UncheckedIOException("Could not read import manifest " + manifest, e);
+		}
+	}
+	
+	private static void addXmlOrDirectory(Path p, Set<Path> files) {
+		if (Files.isDirectory(p)) {
+			try (Stream<Path> listing = Files.list(p)) {
+				listing.filter(f -> isXml(f) && Files.isRegularFile(f))
+				       .sorted((a, b) -> a.getFileName().toString().compareTo(b.getFileName().toString()))
+				       .forEach(f -> files.add(f.toAbsolutePath().normalize()));
+			} catch (IOException e) {
+				throw new UncheckedIOException("Could not list import directory " + p, e);
+			}
+		} else if (Files.isRegularFile(p)) {
+			files.add(p.toAbsolutePath().normalize());
+		} else {
+			throw new IllegalArgumentException("Import file does not exist: " + p);
+		}
+	}
+	
+	private static boolean isManifest(Path p) {
+		return p.getFileName() != null && p.getFileName().toString().toLowerCase(Locale.ROOT).endsWith(MANIFEST_SFX);
+	}
+	
+	private static boolean isXml(Path p) {
+		return p.getFileName() != null && p.getFileName().toString().toLowerCase(Locale.ROOT).endsWith(XML_SFX);
 	}
 	
 	private IIQImporter() {
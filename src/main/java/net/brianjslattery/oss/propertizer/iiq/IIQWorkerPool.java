@@ -0,0 +1,250 @@
+/**
+ * Copyright © 2021 Brian J Slattery <oss@brnsl.com>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the “Software”), to
+ * deal in the Software without restriction, including without limitation the
+ * rights to use, copy, modify, merge, publish, distribute, sublicense, and/or
+ * sell copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED “AS IS”, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ * 
+ */
+package net.brianjslattery.oss.propertizer.iiq;
+
+import java.io.IOException;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.net.MalformedURLException;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import net.brianjslattery.oss.propertizer.utilities.Environment;
+import sailpoint.launch.Launcher;
+
+/**
+ * A fixed set of IIQ workers, each with its own classloader over
+ * {@code WEB-INF/lib} and {@code WEB-INF/classes}. IIQ keeps static state,
+ * so this is what lets commands really run in parallel. Each worker runs
+ * on one dedicated thread, is warmed once, and is reused for the whole run.
+ * 
+ * @author Brian J Slattery <oss@brnsl.com>
+ * 
+ */
+final class IIQWorkerPool implements AutoCloseable {
+	
+	static final String WORKERS_VAR = "IIQ_WORKERS";
+	static final String WEB_INF_VAR = "IIQ_WEB_INF";
+	
+	private static final String LAUNCHER = "sailpoint.launch.Launcher";
+	// Encrypting a throwaway value initializes IIQ's encryption in the worker
+	private static final String[] WARM_UP = { "encrypt", "propertizer-warm-up" };
+	
+	private final List<Worker> workers;
+	private final AtomicInteger next = new AtomicInteger();
+	
+	IIQWorkerPool(List<URL> classpath, int size) {
+		List<Worker> ws = new ArrayList<>(size);
+		for (int i = 1; i <= size; i++) {
+			ws.add(new Worker(i, classpath));
+		}
+		this.workers = ws;
+	}
+	
+	/**
+	 * 
+	 * @return a pool of {@value #WORKERS_VAR} workers, or null when that is unset, 1 or less, or WEB-INF cannot be found
+	 */
+	static IIQWorkerPool from(Environment env) {
+		
+		int size = getWorkers(env);
+		if (size <= 1) {
+			return null;
+		}
+		
+		Path webInf = findWebInf(env);
+		if (webInf == null) {
+			System.out.println("IIQWorkerPool: cannot locate WEB-INF, set " + WEB_INF_VAR + ". Running IIQ commands in process.");
+			return null;
+		}
+		
+		try {
+			List<URL> classpath = classpath(webInf);
+			System.out.println("IIQWorkerPool: starting " + size + " workers over " + webInf + " (" + classpath.size() + " entries).");
+			return new IIQWorkerPool(classpath, size);
+		} catch (IOException e) {
+			System.out.println("IIQWorkerPool: cannot read " + webInf + ", running IIQ commands in process. Message: " + e.getMessage());
+			return null;
+		}
+		
+	}
+	
+	/**
+	 * Run a command on the next worker, passing each printed line to
+	 * {@code lines} on that worker's thread.
+	 */
+	CompletableFuture<Void> runCommand(Consumer<String> lines, String... args) {
+		Worker w = workers.get(Math.floorMod(next.getAndIncrement(), workers.size()));
+		return w.run(lines, args);
+	}
+	
+	int size() {
+		return workers.size();
+	}
+	
+	@Override
+	public void close() {
+		workers.forEach(Worker::close);
+	}
+	
+	static int getWorkers(Environment env) {
+		String v = env.get(WORKERS_VAR);
+		if (v == null || v.trim().isEmpty()) {
+			return 1;
+		}
+		try {
+			return Integer.parseInt(v.trim());
+		} catch (NumberFormatException e) {
+			System.out.println("IIQWorkerPool: ignoring invalid " + WORKERS_VAR + "=[" + v + "]");
+			return 1;
+		}
+	}
+	
+	/**
+	 * 
+	 * @return {@value #WEB_INF_VAR}, else the WEB-INF the Launcher was loaded from, else null
+	 */
+	static Path findWebInf(Environment env) {
+		
+		String v = env.get(WEB_INF_VAR);
+		if (v != null && !v.trim().isEmpty()) {
+			return Paths.get(v.trim());
+		}
+		
+		try {
+			// ex: <iiq-root>/WEB-INF/lib/identityiq.jar
+			Path jar = Paths.get(Launcher.class.getProtectionDomain().getCodeSource().getLocation().toURI());
+			Path lib = jar.getParent();
+			if (lib != null && lib.getParent() != null && "WEB-INF".equals(String.valueOf(lib.getParent().getFileName()))) {
+				return lib.getParent();
+			}
+		} catch (URISyntaxException | RuntimeException e) {
+			// Unknown code source, e.g. a custom classloader
+		}
+		return null;
+		
+	}
+	
+	static List<URL> classpath(Path webInf) throws IOException {
+		
+		List<URL> urls = new ArrayList<>();
+		
+		Path classes = webInf.resolve("classes");
+		if (Files.isDirectory(classes)) {
+			urls.add(toUrl(classes));
+		}
+		
+		Path lib = webInf.resolve("lib");
+		if (Files.isDirectory(lib)) {
+			try (Stream<Path> jars = Files.list(lib)) {
+				for (Path jar : jars.filter(p -> p.toString().endsWith(".jar")).sorted().collect(Collectors.toList())) {
+					urls.add(toUrl(jar));
+				}
+			}
+		}
+		
+		return urls;
+		
+	}
+	
+	private static URL toUrl(Path p) throws MalformedURLException {
+		return p.toUri().toURL();
+	}
+	
+	private static final class Worker {
+		
+		private final String name;
+		private final URLClassLoader loader;
+		private final ExecutorService thread;
+		private final CompletableFuture<MethodHandle> main;
+		
+		Worker(int id, List<URL> classpath) {
+			this.name   = "iiq-worker-" + id;
+			// Platform parent, so nothing of IIQ is shared between workers
+			this.loader = new URLClassLoader(name, classpath.toArray(new URL[0]), ClassLoader.getPlatformClassLoader());
+			this.thread = Executors.newSingleThreadExecutor(r -> {
+				Thread t = new Thread(r, name);
+				t.setDaemon(true);
+				t.setContextClassLoader(loader);
+				return t;
+			});
+			// Warms in the background; the first command waits for it
+			this.main = CompletableFuture.supplyAsync(this::warmUp, thread);
+		}
+		
+		private MethodHandle warmUp() {
+			long start = System.nanoTime();
+			try {
+				Class<?> c = Class.forName(LAUNCHER, true, loader);
+				MethodHandle m = MethodHandles.publicLookup()
+						.findStatic(c, "main", MethodType.methodType(void.class, String[].class));
+				ThreadRoutedOutput.capture(line -> { }, () -> invoke(m, WARM_UP));
+				System.out.println("IIQWorkerPool: " + name + " warmed up in "
+						+ TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) + " millis.");
+				return m;
+			} catch (ReflectiveOperationException e) {
+				throw new IllegalStateException("Cannot load " + LAUNCHER + " in " + name, e);
+			}
+		}
+		
+		CompletableFuture<Void> run(Consumer<String> lines, String... args) {
+			return main.thenAcceptAsync(m -> ThreadRoutedOutput.capture(lines, () -> invoke(m, args)), thread);
+		}
+		
+		private static void invoke(MethodHandle m, String[] args) {
+			try {
+				m.invokeExact(args);
+			} catch (RuntimeException | Error e) {
+				throw e;
+			} catch (Throwable t) {
+				throw new IllegalStateException("IIQ command failed.", t);
+			}
+		}
+		
+		void close() {
+			thread.shutdownNow();
+			try {
+				loader.close();
+			} catch (IOException e) {
+				System.out.println("IIQWorkerPool: failed to close " + name + ": " + e.getMessage());
+			}
+		}
+		
+	}
+	
+}
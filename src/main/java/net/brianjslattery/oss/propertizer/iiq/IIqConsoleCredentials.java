@@ -23,6 +23,10 @@
 package net.brianjslattery.oss.propertizer.iiq;
 
 import static net.brianjslattery.oss.propertizer.utilities.Utilities.*;
+
+import java.util.HashMap;
+import java.util.Map;
+
 import net.brianjslattery.oss.propertizer.CliUtils;
 import net.brianjslattery.oss.propertizer.kms.DecryptionService;
 import net.brianjslattery.oss.propertizer.kms.DecryptionServiceFactory;
@@ -63,8 +67,13 @@ public class IIqConsoleCredentials {
 		
 		DecryptionService kms = DecryptionServiceFactory.getService();
 		
-		if (userIsKms) username = kms.decrypt(username);
-		password = kms.decrypt(password);
+		Map<String, String> batch = new HashMap<>();
+		if (userIsKms) batch.put(userVarName, username);
+		batch.put(passVarName, password);
+		
+		Map<String, String> decrypted = kms.decryptAll(batch);
+		if (userIsKms) username = decrypted.get(userVarName);
+		password = decrypted.get(passVarName);
 		
 		return new IIqConsoleCredentials(username, password);
 		
@@ -22,8 +22,19 @@
  */
 package net.brianjslattery.oss.propertizer.iiq;
 
+import static net.brianjslattery.oss.propertizer.Constants.DATASOURCE_URL_PROPNAME;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+
+import net.brianjslattery.oss.propertizer.EnvironmentProperties;
 import net.brianjslattery.oss.propertizer.PropertizerOptions;
+import net.brianjslattery.oss.propertizer.kms.DecryptionServiceFactory;
 import net.brianjslattery.oss.propertizer.utilities.Environment;
+import net.brianjslattery.oss.propertizer.utilities.Utilities;
 
 /**
  * 
@@ -32,7 +43,7 @@ import net.brianjslattery.oss.propertizer.utilities.Environment;
  */
 public final class IiqImportHandler {
 
-	public static void doHandle(PropertizerOptions opts) {
+	public static void doHandle(PropertizerOptions opts, EnvironmentProperties eProps) throws IOException {
 		
 		Environment env = Environment.getDefault();
 		
@@ -42,11 +53,100 @@ public final class IiqImportHandler {
 		
 		IIqConsoleCredentials creds = IIqConsoleCredentials.getPair(env, userVar, passVar);
 		
-		System.out.println("Calling IIQ Import now.");
-		IIQImporter.runImport(file, creds);
+		List<Path> files = IIQImporter.resolveFiles(file);
+		
+		StringBuilder rpt = new StringBuilder();
+		boolean ok = true;
+		
+		// Files already imported into this database are skipped, unless forced
+		IIQImportManifest manifest = null;
+		String dbUrl = databaseUrl(opts, eProps);
+		if (dbUrl == null) {
+			System.out.println("IiqImportHandler: no " + DATASOURCE_URL_PROPNAME + " found; every file is imported.");
+		} else {
+			manifest = IIQImportManifest.load(env, dbUrl);
+			if (!opts.isImportForce()) {
+				List<Path> changed = new ArrayList<>();
+				for (Path f : files) {
+					if (manifest.isApplied(f)) {
+						rpt.append("IIQ import: file=[").append(f).append("], status=[UNCHANGED].\n");
+					} else {
+						changed.add(f);
+					}
+				}
+				System.out.println("IiqImportHandler: " + (files.size() - changed.size()) + " of " + files.size()
+						+ " files are unchanged since they were imported into this database.");
+				files = changed;
+			}
+		}
+		
+		// Only files known to have imported cleanly are recorded
+		IIQImportManifest applied = manifest;
+		Consumer<Path> imported = f -> {
+			if (applied != null) {
+				applied.record(f);
+			}
+		};
+		
+		try {
+			if (files.isEmpty()) {
+				System.out.println("Nothing to import.");
+			} else if (IIQImporter.isPartitioned(env)) {
+				System.out.println("Calling partitioned IIQ Import now for " + files.size() + " files, in order: " + files);
+				for (Path f : files) {
+					// Later files may depend on earlier ones, so stop at the first failure
+					if (!IIQImporter.runPartitionedImport(f, creds, rpt, imported)) {
+						ok = false;
+						break;
+					}
+				}
+			} else if (files.size() == 1) {
+				System.out.println("Calling IIQ Import now.");
+				Path f = files.get(0);
+				ok = IIQImporter.runImport(f.toString(), creds);
+				rpt.append("IIQ import: file=[").append(f).append("], status=[").append(ok ? "OK" : "FAILED").append("].\n");
+				if (ok) {
+					imported.accept(f);
+				}
+			} else {
+				System.out.println("Calling IIQ Import now for " + files.size() + " files, in order: " + files);
+				ok = IIQImporter.runImports(files, creds, rpt, imported);
+			}
+		} finally {
+			if (manifest != null) {
+				manifest.save();
+			}
+		}
+		
+		if (rpt.length() > 0) {
+			System.out.println("==iiq import report==\n" + rpt + "==end iiq import report==\n");
+		}
+		if (!ok) {
+			throw new IllegalStateException("IIQ import did not complete for every file; see the import report.");
+		}
 		
 		System.out.println("==========[ KMS Propertizer > IIQ Import Complete ]==========");
 	}
+	
+	/**
+	 * 
+	 * @return the database the console imports into: from the environment, else the iiq.properties input; or null
+	 */
+	static String databaseUrl(PropertizerOptions opts, EnvironmentProperties eProps) throws IOException {
+		String url = eProps.getIiqProperties().get(DATASOURCE_URL_PROPNAME);
+		if (url != null) {
+			return url;
+		}
+		String kmsUrl = eProps.getKmsIiqProperties().get(DATASOURCE_URL_PROPNAME);
+		if (kmsUrl != null) {
+			return DecryptionServiceFactory.getService().decrypt(kmsUrl);
+		}
+		if (opts.getInputPath() != null) {
+			Path p = eProps.getAbsoluteDirectory(opts.getInputPath());
+			return Utilities.loadPropertiesFile(p, "IIQ").getProperty(DATASOURCE_URL_PROPNAME);
+		}
+		return null;
+	}
 		
 	private IiqImportHandler() {
 	}
@@ -0,0 +1,173 @@
+/**
+ * Copyright © 2021 Brian J Slattery <oss@brnsl.com>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the “Software”), to
+ * deal in the Software without restriction, including without limitation the
+ * rights to use, copy, modify, merge, publish, distribute, sublicense, and/or
+ * sell copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED “AS IS”, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ * 
+ */
+package net.brianjslattery.oss.propertizer.iiq;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.function.Consumer;
+
+/**
+ * Routes {@code System.out} per thread, so concurrent captures do not
+ * see each other's output, and output from other threads is never
+ * captured. Threads without a route (or started before one was set)
+ * write to the original {@code System.out} as usual.
+ * 
+ * @author Brian J Slattery <oss@brnsl.com>
+ * 
+ */
+final class ThreadRoutedOutput extends OutputStream {
+	
+	// Inherited, so threads the command itself starts are captured too, until the capture ends
+	private static final InheritableThreadLocal<OutputStream> ROUTE = new InheritableThreadLocal<>();
+	
+	private final OutputStream original;
+	
+	private ThreadRoutedOutput(OutputStream original) {
+		this.original = original;
+	}
+	
+	/**
+	 * Run {@code task} with everything the current thread prints passed to
+	 * {@code lines}, one line at a time as it is printed. Anything {@code lines}
+	 * prints itself goes where it would have without the capture.
+	 */
+	static void capture(Consumer<String> lines, Runnable task) {
+		install();
+		OutputStream previous = ROUTE.get();
+		try (LineSink sink = new LineSink(lines, previous)) {
+			ROUTE.set(sink);
+			try {
+				task.run();
+			} finally {
+				System.out.flush();
+			}
+		} finally {
+			ROUTE.set(previous);
+		}
+	}
+	
+	private static synchronized void install() {
+		PrintStream current = System.out;
+		if (!(current instanceof Routed)) {
+			System.setOut(new Routed(new ThreadRoutedOutput(current)));
+		}
+	}
+	
+	private OutputStream target() {
+		OutputStream r = ROUTE.get();
+		// A thread started during a capture keeps its route after the capture has ended
+		while (r instanceof LineSink && ((LineSink) r).closed) {
+			r = ((LineSink) r).previous;
+		}
+		return r != null ? r : original;
+	}
+	
+	@Override
+	public void write(int b) throws IOException {
+		target().write(b);
+	}
+	
+	@Override
+	public void write(byte[] b, int off, int len) throws IOException {
+		target().write(b, off, len);
+	}
+	
+	@Override
+	public void flush() throws IOException {
+		target().flush();
+	}
+	
+	/**
+	 * Marker, so the router is installed only once.
+	 */
+	private static final class Routed extends PrintStream {
+		
+		Routed(OutputStream out) {
+			super(out, true);
+		}
+		
+	}
+	
+	/**
+	 * Hands over each complete line; only the line being printed is held.
+	 * Synchronized, as threads started during the capture share it.
+	 */
+	private static final class LineSink extends OutputStream {
+		
+		private final Consumer<String> lines;
+		private final OutputStream previous;
+		private byte[] buf = new byte[256];
+		private int len;
+		private volatile boolean closed;
+		
+		LineSink(Consumer<String> lines, OutputStream previous) {
+			this.lines    = lines;
+			this.previous = previous;
+		}
+		
+		@Override
+		public synchronized void write(int b) {
+			if (b == '\n') {
+				emit();
+				return;
+			}
+			if (len == buf.length) {
+				buf = Arrays.copyOf(buf, len * 2);
+			}
+			buf[len++] = (byte) b;
+		}
+		
+		@Override
+		public synchronized void write(byte[] b, int off, int n) {
+			for (int i = off; i < off + n; i++) {
+				write(b[i]);
+			}
+		}
+		
+		@Override
+		public synchronized void close() {
+			if (len > 0) {
+				emit();
+			}
+			closed = true;
+		}
+		
+		private void emit() {
+			int end = len > 0 && buf[len - 1] == '\r' ? len - 1 : len;
+			String line = new String(buf, 0, end, Charset.defaultCharset());
+			len = 0;
+			OutputStream self = ROUTE.get();
+			ROUTE.set(previous);
+			try {
+				lines.accept(line);
+			} finally {
+				ROUTE.set(self);
+			}
+		}
+		
+	}
+	
+}
@@ -0,0 +1,229 @@
+/**
+ * Copyright © 2021 Brian J Slattery <oss@brnsl.com>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the “Software”), to
+ * deal in the Software without restriction, including without limitation the
+ * rights to use, copy, modify, merge, publish, distribute, sublicense, and/or
+ * sell copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED “AS IS”, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ * 
+ */
+package net.brianjslattery.oss.propertizer.kms;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import net.brianjslattery.oss.propertizer.utilities.Environment;
+
+/**
+ * AIMD concurrency limit for KMS calls. The limit grows by roughly one
+ * per round trip while calls are fast, and is cut by {@code backoffRatio}
+ * when a call is throttled or slower than the latency threshold.
+ * 
+ * Callers over the limit wait in FIFO order; a caller that waits longer
+ * than {@code maxWaitMillis} is rejected with {@link RejectedException}.
+ * 
+ * @author Brian J Slattery <oss@brnsl.com>
+ * 
+ */
+class AdaptiveLimiter {
+	
+	static final String INITIAL_LIMIT_VAR = "KMS_LIMITER_INITIAL";
+	static final String MAX_LIMIT_VAR     = "KMS_LIMITER_MAX";
+	static final String LATENCY_VAR       = "KMS_LIMITER_LATENCY_MILLIS";
+	static final String MAX_WAIT_VAR      = "KMS_LIMITER_MAX_WAIT_MILLIS";
+	
+	private static final long DEFAULT_INITIAL_LIMIT = 4;
+	private static final long DEFAULT_LATENCY       = 500;
+	private static final long DEFAULT_MAX_WAIT      = 30_000;
+	private static final double BACKOFF_RATIO       = 0.5;
+	private static final int MIN_LIMIT              = 1;
+	
+	private final int maxLimit;
+	private final long latencyThresholdNanos;
+	private final long maxWaitMillis;
+	
+	// guarded by this
+	private double limit;
+	private int inFlight;
+	private int maxInFlight;
+	private long queued;
+	private long rejected;
+	private long decreases;
+	private final Deque<CompletableFuture<Void>> waiters = new ArrayDeque<>();
+	
+	AdaptiveLimiter(int initialLimit, int maxLimit, long latencyThresholdMillis, long maxWaitMillis) {
+		this.maxLimit              = Math.max(MIN_LIMIT, maxLimit);
+		this.limit                 = Math.max(MIN_LIMIT, Math.min(initialLimit, this.maxLimit));
+		this.latencyThresholdNanos = TimeUnit.MILLISECONDS.toNanos(latencyThresholdMillis);
+		this.maxWaitMillis         = maxWaitMillis;
+	}
+	
+	static AdaptiveLimiter from(Environment env, int maxConnections) {
+		return new AdaptiveLimiter(
+				(int) KmsClientSettings.getLong(env, INITIAL_LIMIT_VAR, DEFAULT_INITIAL_LIMIT),
+				(int) KmsClientSettings.getLong(env, MAX_LIMIT_VAR, maxConnections),
+				KmsClientSettings.getLong(env, LATENCY_VAR,  DEFAULT_LATENCY),
+				KmsClientSettings.getLong(env, MAX_WAIT_VAR, DEFAULT_MAX_WAIT));
+	}
+	
+	/**
+	 * 
+	 * @return a future completed once the caller may proceed; every
+	 *         successful acquire must be matched by exactly one of
+	 *         {@link #onSuccess(long)}, {@link #onThrottled()} or {@link #onIgnore()}
+	 */
+	CompletableFuture<Void> acquire() {
+		
+		CompletableFuture<Void> w;
+		synchronized (this) {
+			if (waiters.isEmpty() && inFlight < currentLimit()) {
+				admitOne();
+				return CompletableFuture.completedFuture(null);
+			}
+			queued++;
+			w = new CompletableFuture<>();
+			waiters.add(w);
+		}
+		
+		CompletableFuture.delayedExecutor(maxWaitMillis, TimeUnit.MILLISECONDS).execute(() -> {
+			// Whoever removes the waiter under the lock decides its fate
+			synchronized (this) {
+				if (!waiters.remove(w)) {
+					return;
+				}
+				rejected++;
+			}
+			w.completeExceptionally(new RejectedException("KMS concurrency limit reached; waited " + maxWaitMillis + " ms."));
+		});
+		
+		return w;
+		
+	}
+	
+	/**
+	 * Release after a call that completed in {@code latencyNanos}.
+	 */
+	void onSuccess(long latencyNanos) {
+		synchronized (this) {
+			inFlight--;
+			if (latencyNanos > latencyThresholdNanos) {
+				decrease();
+			} else if (inFlight * 2 >= currentLimit()) {
+				// Only grow while the current limit is actually being used
+				limit = Math.min(maxLimit, limit + 1.0 / limit);
+			}
+		}
+		drain();
+	}
+	
+	/**
+	 * Release after a call that was throttled.
+	 */
+	void onThrottled() {
+		synchronized (this) {
+			inFlight--;
+			decrease();
+		}
+		drain();
+	}
+	
+	/**
+	 * Release without adjusting the limit, e.g. after a non-throttling failure.
+	 */
+	void onIgnore() {
+		synchronized (this) {
+			inFlight--;
+		}
+		drain();
+	}
+	
+	synchronized int getLimit() {
+		return currentLimit();
+	}
+	
+	synchronized int getInFlight() {
+		return inFlight;
+	}
+	
+	synchronized long getQueued() {
+		return queued;
+	}
+	
+	synchronized long getRejected() {
+		return rejected;
+	}
+	
+	synchronized void report(StringBuilder rpt) {
+		rpt.append("KMS limiter: limit=[").append(currentLimit())
+		   .append("], maxInFlight=[").append(maxInFlight)
+		   .append("], queued=[").append(queued)
+		   .append("], rejected=[").append(rejected)
+		   .append("], decreases=[").append(decreases)
+		   .append("].\n");
+	}
+	
+	private void decrease() {
+		limit = Math.max(MIN_LIMIT, limit * BACKOFF_RATIO);
+		decreases++;
+	}
+	
+	private int currentLimit() {
+		return (int) limit;
+	}
+	
+	private void admitOne() {
+		inFlight++;
+		maxInFlight = Math.max(maxInFlight, inFlight);
+	}
+	
+	/**
+	 * Admit waiters while there is room. Futures are completed outside
+	 * the lock so their continuations never run while holding it.
+	 */
+	private void drain() {
+		
+		List<CompletableFuture<Void>> admitted = new ArrayList<>();
+		synchronized (this) {
+			while (!waiters.isEmpty() && inFlight < currentLimit()) {
+				admitOne();
+				admitted.add(waiters.poll());
+			}
+		}
+		
+		admitted.forEach(w -> w.complete(null));
+		
+	}
+	
+	/**
+	 * Thrown when a caller waits too long for a slot. Treated as
+	 * throttling by {@link DecryptRetryPolicy}.
+	 */
+	static class RejectedException extends RejectedExecutionException {
+		
+		private static final long serialVersionUID = 1L;
+		
+		RejectedException(String msg) {
+			super(msg);
+		}
+		
+	}
+	
+}
@@ -0,0 +1,126 @@
+/**
+ * Copyright © 2021 Brian J Slattery <oss@brnsl.com>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the “Software”), to
+ * deal in the Software without restriction, including without limitation the
+ * rights to use, copy, modify, merge, publish, distribute, sublicense, and/or
+ * sell copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED “AS IS”, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ * 
+ */
+package net.brianjslattery.oss.propertizer.kms;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+
+import software.amazon.awssdk.auth.credentials.AwsCredentialsProvider;
+import software.amazon.awssdk.services.kms.KmsAsyncClient;
+import software.amazon.awssdk.services.kms.model.DecryptResponse;
+
+/**
+ * Non-blocking decryption on the SDK's {@link KmsAsyncClient}. Requests
+ * share the client's event loop threads rather than holding a thread
+ * each; {@link #decrypt(String)} is kept as a blocking adapter.
+ * 
+ * @author Brian J Slattery <oss@brnsl.com>
+ * 
+ */
+class AwsKmsAsyncService implements DecryptionService {
+	
+	private final KmsAsyncClient kms;
+	private final String keyId;
+	
+	AwsKmsAsyncService(KmsAsyncClient kms, String keyId) {
+		this.kms   = kms;
+		this.keyId = keyId;
+		System.out.println("Loaded AwsKmsAsyncService with Key " + keyId);
+	}
+	
+	@Override
+	public String decrypt(String ciphertext) {
+		return join(decryptAsync(ciphertext));
+	}
+	
+	/**
+	 * Decrypt to raw bytes, e.g. for a data key. The caller owns (and should wipe) the result.
+	 */
+	byte[] decryptBytes(String ciphertext) {
+		return join(doDecryptAsync(ciphertext).thenApply(r -> r.plaintext().asByteArray()));
+	}
+	
+	/**
+	 * Resolve credentials and open a connection ahead of the first
+	 * decrypt. Blocks until done; see {@link AwsKmsService#warmUp(String, AwsCredentialsProvider, Runnable)}.
+	 */
+	void warmUp(AwsCredentialsProvider credentials) {
+		AwsKmsService.warmUp(getClass().getSimpleName(), credentials,
+				() -> join(kms.describeKey(AwsKmsService.describeKeyRequest(keyId))));
+	}
+	
+	@Override
+	public CompletableFuture<String> decryptAsync(String ciphertext) {
+		return doDecryptAsync(ciphertext).thenApply(r -> r.plaintext().asString(UTF_8));
+	}
+	
+	private CompletableFuture<DecryptResponse> doDecryptAsync(String ciphertext) {
+		
+		CompletableFuture<DecryptResponse> res;
+		try {
+			res = kms.decrypt(AwsKmsService.buildRequest(ciphertext, keyId));
+		} catch (RuntimeException e) {
+			res = CompletableFuture.failedFuture(e);
+		}
+		
+		return res.whenComplete((v, t) -> {
+			if (t != null) {
+				AwsKmsService.logFailure(ciphertext, unwrap(t));
+			}
+		});
+		
+	}
+	
+	private static <T> T join(CompletableFuture<T> f) {
+		try {
+			return f.join();
+		} catch (CompletionException e) {
+			Throwable cause = unwrap(e);
+			if (cause instanceof RuntimeException) {
+				throw (RuntimeException) cause;
+			}
+			throw e;
+		}
+	}
+	
+	private static Throwable unwrap(Throwable t) {
+		return t instanceof CompletionException && t.getCause() != null ? t.getCause() : t;
+	}
+	
+	/**
+	 * I/O already runs on the client's event loop, so the executor is not used.
+	 */
+	@Override
+	public CompletableFuture<String> decryptAsync(String ciphertext, Executor executor) {
+		return decryptAsync(ciphertext);
+	}
+	
+	@Override
+	public void close() {
+		kms.close();
+	}
+	
+}
@@ -0,0 +1,104 @@
+/**
+ * Copyright © 2021 Brian J Slattery <oss@brnsl.com>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the “Software”), to
+ * deal in the Software without restriction, including without limitation the
+ * rights to use, copy, modify, merge, publish, distribute, sublicense, and/or
+ * sell copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED “AS IS”, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ * 
+ */
+package net.brianjslattery.oss.propertizer.kms;
+
+import software.amazon.awssdk.auth.credentials.AwsCredentialsProvider;
+import software.amazon.awssdk.auth.credentials.DefaultCredentialsProvider;
+import software.amazon.awssdk.core.client.config.ClientOverrideConfiguration;
+import software.amazon.awssdk.core.retry.RetryPolicy;
+import software.amazon.awssdk.services.kms.KmsAsyncClient;
+import software.amazon.awssdk.services.kms.KmsClient;
+
+/**
+ * Builds the SDK backed services. Kept apart from
+ * {@link DecryptionServiceFactory}, so the AWS SDK is only loaded
+ * once a run actually has a key and something to decrypt.
+ * 
+ * @author Brian J Slattery <oss@brnsl.com>
+ * 
+ */
+final class AwsKmsClients {
+	
+	/**
+	 * 
+	 * @param warm also resolve credentials and open a connection before returning
+	 */
+	static AwsKmsService newService(String keyId, KmsClientSettings settings, boolean warm) {
+		
+		AwsCredentialsProvider creds = credentials();
+		KmsClient k = KmsClient
+				.builder()
+				.httpClientBuilder(settings.apacheClient())
+				.credentialsProvider(creds)
+				.overrideConfiguration(noSdkRetries())
+				.build();
+		
+		AwsKmsService kms = new AwsKmsService(k, keyId);
+		if (warm) kms.warmUp(creds);
+		return kms;
+		
+	}
+	
+	/**
+	 * 
+	 * @param warm also resolve credentials and open a connection before returning
+	 */
+	static AwsKmsAsyncService newAsyncService(String keyId, KmsClientSettings settings, boolean warm) {
+		
+		AwsCredentialsProvider creds = credentials();
+		KmsAsyncClient k = KmsAsyncClient
+				.builder()
+				.httpClientBuilder(settings.nettyClient())
+				.credentialsProvider(creds)
+				.overrideConfiguration(noSdkRetries())
+				.build();
+		
+		AwsKmsAsyncService kms = new AwsKmsAsyncService(k, keyId);
+		if (warm) kms.warmUp(creds);
+		return kms;
+		
+	}
+	
+	/**
+	 * Retries are handled by {@link DecryptRetryPolicy}; SDK retries on
+	 * top of it would multiply attempts and hide throttling from the report.
+	 */
+	private static ClientOverrideConfiguration noSdkRetries() {
+		return ClientOverrideConfiguration
+				.builder()
+				.retryPolicy(RetryPolicy.none())
+				.build();
+	}
+	
+	/**
+	 * The default chain caches what it resolves, so sharing one instance
+	 * means the chain is only probed once per process.
+	 */
+	private static AwsCredentialsProvider credentials() {
+		return DefaultCredentialsProvider.create();
+	}
+	
+	private AwsKmsClients() {
+	}
+	
+}
@@ -25,11 +25,14 @@ package net.brianjslattery.oss.propertizer.kms;
 import static java.nio.charset.StandardCharsets.UTF_8;
 
 import java.util.Base64;
+import java.util.concurrent.TimeUnit;
 
+import software.amazon.awssdk.auth.credentials.AwsCredentialsProvider;
 import software.amazon.awssdk.core.SdkBytes;
 import software.amazon.awssdk.services.kms.KmsClient;
 import software.amazon.awssdk.services.kms.model.DecryptRequest;
 import software.amazon.awssdk.services.kms.model.DecryptResponse;
+import software.amazon.awssdk.services.kms.model.DescribeKeyRequest;
 
 /**
  * 
@@ -52,54 +55,111 @@ class AwsKmsService implements DecryptionService {
 		try {
 			return doDecrypt(ciphertext);
 		} catch (Exception e) {
-			
-			int len = ciphertext.length();
-			
-			String start = null;
-			String end   = null;
-			
-			if (len > 15) {
-				start = ciphertext.substring(0, 8);
-				end   = ciphertext.substring(ciphertext.length()-8);
-			} else if (len <=15 && len > 2) {
-				int sub = len / 3;
-				start = ciphertext.substring(0, sub);
-				end   = ciphertext.substring(ciphertext.length() - sub);
-			}
-			
-			String errMsg = new StringBuilder("Encountered exception ")
-					.append(e.getClass())
-					.append(" while handling ciphertext of length ").append(len)
-					.append(". start=[").append(start)
-					.append("] end=[").append(end)
-					.append("]. Message: ").append(e.getMessage())
-					.toString();
-			
-			System.out.println(errMsg);
-			
+			logFailure(ciphertext, e);
 			throw e;
 		}
 		
 	}
 	
+	/**
+	 * Decrypt to raw bytes, e.g. for a data key. The caller owns (and should wipe) the result.
+	 */
+	byte[] decryptBytes(String ciphertext) {
+		
+		try {
+			return kms.decrypt(buildRequest(ciphertext, keyId)).plaintext().asByteArray();
+		} catch (Exception e) {
+			logFailure(ciphertext, e);
+			throw e;
+		}
+		
+	}
+	
+	/**
+	 * Resolve credentials and open a connection ahead of the first decrypt.
+	 */
+	void warmUp(AwsCredentialsProvider credentials) {
+		warmUp(getClass().getSimpleName(), credentials,
+				() -> kms.describeKey(describeKeyRequest(keyId)));
+	}
+	
+	/**
+	 * Best effort: a failure (e.g. no kms:DescribeKey permission) is only
+	 * logged, since the connection is open either way and a real problem
+	 * surfaces on the first decrypt.
+	 */
+	static void warmUp(String name, AwsCredentialsProvider credentials, Runnable call) {
+		long start = System.nanoTime();
+		try {
+			credentials.resolveCredentials();
+			call.run();
+			System.out.println(name + ": warmed up in [" + TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) + "]ms.");
+		} catch (RuntimeException e) {
+			System.out.println(name + ": warm-up incomplete after [" + TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start)
+					+ "]ms, continuing. Message: " + e.getMessage());
+		}
+	}
+	
+	static DescribeKeyRequest describeKeyRequest(String keyId) {
+		return DescribeKeyRequest
+				.builder()
+				.keyId(keyId)
+				.build();
+	}
+	
 	private String doDecrypt(String ciphertext) {
+		DecryptResponse res = kms.decrypt(buildRequest(ciphertext, keyId));
+		return res.plaintext().asString(UTF_8);
+	}
+	
+	static DecryptRequest buildRequest(String ciphertext, String keyId) {
 		
 		byte[] bytes = doDecode(ciphertext);
 		SdkBytes ciphertextBlob = SdkBytes.fromByteArray(bytes);
 		
-		DecryptRequest decryptRequest = DecryptRequest
+		return DecryptRequest
 				.builder()
 				.ciphertextBlob(ciphertextBlob)
 				.keyId(keyId)
 				.build();
 		
-		DecryptResponse res = kms.decrypt(decryptRequest);
-		return res.plaintext().asString(UTF_8);
+	}
+	
+	static void logFailure(String ciphertext, Throwable e) {
+		
+		int len = ciphertext.length();
+		
+		String start = null;
+		String end   = null;
+		
+		if (len > 15) {
+			start = ciphertext.substring(0, 8);
+			end   = ciphertext.substring(ciphertext.length()-8);
+		} else if (len <=15 && len > 2) {
+			int sub = len / 3;
+			start = ciphertext.substring(0, sub);
+			end   = ciphertext.substring(ciphertext.length() - sub);
+		}
+		
+		String errMsg = new StringBuilder("Encountered exception ")
+				.append(e.getClass())
+				.append(" while handling ciphertext of length ").append(len)
+				.append(". start=[").append(start)
+				.append("] end=[").append(end)
+				.append("]. Message: ").append(e.getMessage())
+				.toString();
+		
+		System.out.println(errMsg);
 		
 	}
 	
-	private byte[] doDecode(String ciphertext) {
+	private static byte[] doDecode(String ciphertext) {
 		return Base64.getDecoder().decode(ciphertext);
 	}
 	
+	@Override
+	public void close() {
+		kms.close();
+	}
+	
 }
@@ -0,0 +1,133 @@
+/**
+ * Copyright © 2021 Brian J Slattery <oss@brnsl.com>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the “Software”), to
+ * deal in the Software without restriction, including without limitation the
+ * rights to use, copy, modify, merge, publish, distribute, sublicense, and/or
+ * sell copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED “AS IS”, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ * 
+ */
+package net.brianjslattery.oss.propertizer.kms;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Per-run cache of decrypted values keyed by ciphertext. Concurrent
+ * requests for the same ciphertext share one in-flight call, so a value
+ * used by both an IIQ_ and a TRG_ variable costs one KMS decrypt.
+ * 
+ * Plaintexts are held as bytes so {@link #close()} can wipe them;
+ * failures are not cached.
+ * 
+ * @author Brian J Slattery <oss@brnsl.com>
+ * 
+ */
+class CachingDecryptionService implements DecryptionService {
+	
+	private final DecryptionService delegate;
+	private final Map<String, CompletableFuture<byte[]>> cache = new ConcurrentHashMap<>();
+	
+	private final AtomicInteger hits   = new AtomicInteger();
+	private final AtomicInteger misses = new AtomicInteger();
+	
+	CachingDecryptionService(DecryptionService delegate) {
+		this.delegate = delegate;
+	}
+
+	@Override
+	public String decrypt(String ciphertext) {
+		try {
+			return decryptAsync(ciphertext, Runnable::run).join();
+		} catch (CompletionException e) {
+			if (e.getCause() instanceof RuntimeException) {
+				throw (RuntimeException) e.getCause();
+			}
+			throw e;
+		}
+	}
+	
+	@Override
+	public CompletableFuture<String> decryptAsync(String ciphertext, Executor executor) {
+		
+		CompletableFuture<byte[]> mine = new CompletableFuture<>();
+		CompletableFuture<byte[]> existing = cache.putIfAbsent(ciphertext, mine);
+		
+		if (existing != null) {
+			hits.incrementAndGet();
+			return existing.thenApply(b -> new String(b, UTF_8));
+		}
+		
+		misses.incrementAndGet();
+		
+		// Start the call outside of any map lock; only the winner gets here
+		CompletableFuture<String> call;
+		try {
+			call = delegate.decryptAsync(ciphertext, executor);
+		} catch (RuntimeException e) {
+			call = CompletableFuture.failedFuture(e);
+		}
+		
+		call.whenComplete((v, t) -> {
+			if (t == null) {
+				mine.complete(v.getBytes(UTF_8));
+			} else {
+				cache.remove(ciphertext, mine);
+				mine.completeExceptionally(t instanceof CompletionException && t.getCause() != null ? t.getCause() : t);
+			}
+		});
+		
+		return mine.thenApply(b -> new String(b, UTF_8));
+		
+	}
+	
+	int getHits() {
+		return hits.get();
+	}
+	
+	int getMisses() {
+		return misses.get();
+	}
+	
+	@Override
+	public void report(StringBuilder rpt) {
+		rpt.append("KMS cache: hits=[").append(hits.get())
+		   .append("], misses=[").append(misses.get())
+		   .append("].\n");
+		delegate.report(rpt);
+	}
+	
+	/**
+	 * Wipes every cached plaintext, then closes the wrapped service.
+	 */
+	@Override
+	public void close() {
+		cache.values().forEach(f -> {
+			byte[] b = f.getNow(null);
+			if (b != null) Arrays.fill(b, (byte) 0);
+		});
+		cache.clear();
+		delegate.close();
+	}
+	
+}
@@ -0,0 +1,237 @@
+/**
+ * Copyright © 2021 Brian J Slattery <oss@brnsl.com>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the “Software”), to
+ * deal in the Software without restriction, including without limitation the
+ * rights to use, copy, modify, merge, publish, distribute, sublicense, and/or
+ * sell copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED “AS IS”, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ * 
+ */
+package net.brianjslattery.oss.propertizer.kms;
+
+import java.io.IOException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+import net.brianjslattery.oss.propertizer.utilities.Environment;
+import software.amazon.awssdk.awscore.exception.AwsServiceException;
+import software.amazon.awssdk.core.exception.SdkClientException;
+
+/**
+ * Retries KMS calls that fail with throttling or transient errors,
+ * using decorrelated jitter backoff and a retry budget shared by the
+ * whole run, so a fleet-wide restart slows down instead of failing.
+ * 
+ * Backoff: sleep = min(cap, random(base, previousSleep * 3))
+ * 
+ * @author Brian J Slattery <oss@brnsl.com>
+ * 
+ */
+class DecryptRetryPolicy {
+	
+	enum ErrorClass { THROTTLING, TRANSIENT, FATAL }
+	
+	static final String MAX_ATTEMPTS_VAR = "KMS_RETRY_MAX_ATTEMPTS";
+	static final String BASE_DELAY_VAR   = "KMS_RETRY_BASE_MILLIS";
+	static final String MAX_DELAY_VAR    = "KMS_RETRY_CAP_MILLIS";
+	static final String BUDGET_VAR       = "KMS_RETRY_BUDGET";
+	
+	private static final long DEFAULT_MAX_ATTEMPTS = 6;
+	private static final long DEFAULT_BASE_DELAY   = 50;
+	private static final long DEFAULT_MAX_DELAY    = 5_000;
+	private static final long DEFAULT_BUDGET       = 100;
+	
+	private final int maxAttempts;
+	private final long baseDelayMillis;
+	private final long maxDelayMillis;
+	private final AtomicInteger budget;
+	private final Sleeper sleeper;
+	
+	private final AtomicInteger throttledRetries  = new AtomicInteger();
+	private final AtomicInteger transientRetries  = new AtomicInteger();
+	private final AtomicInteger budgetExhausted   = new AtomicInteger();
+	private final AtomicLong    backoffMillis     = new AtomicLong();
+	
+	DecryptRetryPolicy(int maxAttempts, long baseDelayMillis, long maxDelayMillis, int budget, Sleeper sleeper) {
+		this.maxAttempts     = maxAttempts;
+		this.baseDelayMillis = baseDelayMillis;
+		this.maxDelayMillis  = Math.max(baseDelayMillis, maxDelayMillis);
+		this.budget          = new AtomicInteger(budget);
+		this.sleeper         = sleeper;
+	}
+	
+	static DecryptRetryPolicy from(Environment env) {
+		return new DecryptRetryPolicy(
+				(int) KmsClientSettings.getLong(env, MAX_ATTEMPTS_VAR, DEFAULT_MAX_ATTEMPTS),
+				KmsClientSettings.getLong(env, BASE_DELAY_VAR, DEFAULT_BASE_DELAY),
+				KmsClientSettings.getLong(env, MAX_DELAY_VAR,  DEFAULT_MAX_DELAY),
+				(int) KmsClientSettings.getLong(env, BUDGET_VAR, DEFAULT_BUDGET),
+				Thread::sleep);
+	}
+	
+	/**
+	 * Run the operation, retrying on the calling thread.
+	 */
+	<T> T execute(Supplier<T> op) {
+		long delay = 0;
+		for (int attempt = 1; ; attempt++) {
+			try {
+				return op.get();
+			} catch (RuntimeException e) {
+				delay = nextDelayOrThrow(e, attempt, delay);
+				try {
+					sleeper.sleep(delay);
+				} catch (InterruptedException ie) {
+					Thread.currentThread().interrupt();
+					throw e;
+				}
+			}
+		}
+	}
+	
+	/**
+	 * Run the operation, scheduling retries after the backoff rather than sleeping.
+	 */
+	<T> CompletableFuture<T> executeAsync(Supplier<CompletableFuture<T>> op, Executor executor) {
+		return attemptAsync(op, executor, 1, 0);
+	}
+	
+	private <T> CompletableFuture<T> attemptAsync(Supplier<CompletableFuture<T>> op, Executor executor, int attempt, long prevDelay) {
+		
+		CompletableFuture<T> f;
+		try {
+			f = op.get();
+		} catch (RuntimeException e) {
+			f = CompletableFuture.failedFuture(e);
+		}
+		
+		return f.handle((v, t) -> {
+			if (t == null) {
+				return CompletableFuture.completedFuture(v);
+			}
+			long delay;
+			try {
+				delay = nextDelayOrThrow(unwrap(t), attempt, prevDelay);
+			} catch (RuntimeException e) {
+				return CompletableFuture.<T>failedFuture(e);
+			}
+			Executor later = CompletableFuture.delayedExecutor(delay, TimeUnit.MILLISECONDS, executor);
+			return CompletableFuture.supplyAsync(() -> attemptAsync(op, executor, attempt + 1, delay), later)
+									.thenCompose(x -> x);
+		}).thenCompose(x -> x);
+		
+	}
+	
+	/**
+	 * 
+	 * @return the backoff before the next attempt; rethrows when the error should not be retried
+	 */
+	private long nextDelayOrThrow(Throwable t, int attempt, long prevDelay) {
+		
+		RuntimeException e = t instanceof RuntimeException ? (RuntimeException) t : new CompletionException(t);
+		
+		ErrorClass ec = classify(t);
+		if (ec == ErrorClass.FATAL || attempt >= maxAttempts) {
+			throw e;
+		}
+		if (budget.getAndDecrement() <= 0) {
+			budgetExhausted.incrementAndGet();
+			throw e;
+		}
+		
+		(ec == ErrorClass.THROTTLING ? throttledRetries : transientRetries).incrementAndGet();
+		
+		long upper = Math.max(baseDelayMillis + 1, prevDelay * 3);
+		long delay = Math.min(maxDelayMillis, ThreadLocalRandom.current().nextLong(baseDelayMillis, upper + 1));
+		backoffMillis.addAndGet(delay);
+		
+		System.out.println("DecryptRetryPolicy: " + ec + " error on attempt " + attempt
+				+ ", retrying in " + delay + " ms. Message: " + t.getMessage());
+		return delay;
+		
+	}
+	
+	static ErrorClass classify(Throwable t) {
+		
+		Throwable e = unwrap(t);
+		
+		if (e instanceof AdaptiveLimiter.RejectedException) {
+			// Our own limiter is full, back off as if KMS had said so
+			return ErrorClass.THROTTLING;
+		}
+		
+		if (e instanceof AwsServiceException) {
+			AwsServiceException ase = (AwsServiceException) e;
+			if (ase.isThrottlingException()) {
+				return ErrorClass.THROTTLING;
+			}
+			return ase.statusCode() >= 500 ? ErrorClass.TRANSIENT : ErrorClass.FATAL;
+		}
+		
+		if (e instanceof SdkClientException) {
+			// Network failures and timeouts surface as an IOException cause
+			for (Throwable c = e.getCause(); c != null; c = c.getCause()) {
+				if (c instanceof IOException) {
+					return ErrorClass.TRANSIENT;
+				}
+			}
+		}
+		
+		return ErrorClass.FATAL;
+		
+	}
+	
+	private static Throwable unwrap(Throwable t) {
+		return t instanceof CompletionException && t.getCause() != null ? t.getCause() : t;
+	}
+	
+	int getRetries() {
+		return throttledRetries.get() + transientRetries.get();
+	}
+	
+	int getThrottledRetries() {
+		return throttledRetries.get();
+	}
+	
+	long getBackoffMillis() {
+		return backoffMillis.get();
+	}
+	
+	int getBudgetExhausted() {
+		return budgetExhausted.get();
+	}
+	
+	void report(StringBuilder rpt) {
+		rpt.append("KMS retries=[").append(getRetries())
+		   .append("] (throttled=[").append(throttledRetries.get())
+		   .append("], transient=[").append(transientRetries.get())
+		   .append("]), backoffMillis=[").append(backoffMillis.get())
+		   .append("], budgetExhausted=[").append(budgetExhausted.get())
+		   .append("].\n");
+	}
+	
+	@FunctionalInterface
+	interface Sleeper {
+		void sleep(long millis) throws InterruptedException;
+	}
+	
+}
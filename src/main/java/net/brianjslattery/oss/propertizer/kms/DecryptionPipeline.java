@@ -0,0 +1,198 @@
+/**
+ * Copyright © 2021 Brian J Slattery <oss@brnsl.com>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the “Software”), to
+ * deal in the Software without restriction, including without limitation the
+ * rights to use, copy, modify, merge, publish, distribute, sublicense, and/or
+ * sell copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED “AS IS”, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ * 
+ */
+package net.brianjslattery.oss.propertizer.kms;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Decrypts a map of KMS encrypted values concurrently, with
+ * at most {@code parallelism} decrypts in flight at once. Blocking
+ * services run on a pool of that size; non-blocking services are
+ * driven through {@link DecryptionService#decryptAsync(String, java.util.concurrent.Executor)}
+ * and never occupy a pool thread.
+ *
+ * Results are returned in key order. Keys sharing a ciphertext are
+ * decrypted once. A failure for one key does not stop the others;
+ * every failed key is reported and the batch then fails as a whole.
+ *
+ * @author Brian J Slattery <oss@brnsl.com>
+ *
+ */
+public class DecryptionPipeline {
+
+	public static final String PARALLELISM_VAR = "KMS_DECRYPT_PARALLELISM";
+
+	private static final int DEFAULT_PARALLELISM = 8;
+
+	private final DecryptionService service;
+	private final int parallelism;
+
+	public DecryptionPipeline(DecryptionService service, int parallelism) {
+		if (parallelism < 1) {
+			throw new IllegalArgumentException("Parallelism must be at least 1, was " + parallelism);
+		}
+		this.service     = service;
+		this.parallelism = parallelism;
+	}
+
+	/**
+	 *
+	 * @param service the service to decrypt with
+	 * @return a pipeline using the parallelism from {@value #PARALLELISM_VAR}, or the default
+	 */
+	public static DecryptionPipeline create(DecryptionService service) {
+		return new DecryptionPipeline(service, readParallelism());
+	}
+
+	/**
+	 *
+	 * @param src map of key to ciphertext
+	 * @return map of key to plaintext, sorted by key
+	 */
+	public SortedMap<String, String> decryptAll(Map<String, String> src) {
+
+		SortedMap<String, String> out = new TreeMap<>();
+		if (src.isEmpty()) {
+			return out;
+		}
+
+		// Each distinct ciphertext is decrypted once, under its first key
+		SortedMap<String, String> sorted = new TreeMap<>(src);
+		Map<String, String> firstKey = new HashMap<>();
+		SortedMap<String, String> unique = new TreeMap<>();
+		sorted.forEach((k, v) -> {
+			if (firstKey.putIfAbsent(v, k) == null) {
+				unique.put(k, v);
+			}
+		});
+		
+		int threads = Math.min(parallelism, unique.size());
+		// Threads are only started when a blocking service submits work
+		ExecutorService exec = Executors.newFixedThreadPool(threads, new DecryptThreadFactory());
+		Semaphore permits = new Semaphore(threads);
+
+		try {
+			Map<String, CompletableFuture<String>> pending = new LinkedHashMap<>();
+			unique.forEach((k, v) -> {
+				permits.acquireUninterruptibly();
+				CompletableFuture<String> f;
+				try {
+					f = service.decryptAsync(v, exec);
+				} catch (RuntimeException e) {
+					f = CompletableFuture.failedFuture(e);
+				}
+				pending.put(k, f.whenComplete((r, t) -> permits.release()));
+			});
+
+			Map<String, String> plain = new HashMap<>();
+			Set<String> failed        = new HashSet<>();
+			List<Throwable> causes    = new ArrayList<>();
+
+			for (Entry<String, CompletableFuture<String>> e : pending.entrySet()) {
+				String k = e.getKey();
+				try {
+					plain.put(k, e.getValue().join());
+				} catch (CompletionException ce) {
+					Throwable cause = ce.getCause() != null ? ce.getCause() : ce;
+					System.out.println("DecryptionPipeline: failed to decrypt key=[" + k + "]. Message: " + cause.getMessage());
+					failed.add(k);
+					causes.add(cause);
+				}
+			}
+
+			// Fan results back out to every key sharing a ciphertext
+			List<String> failedKeys = new ArrayList<>();
+			sorted.forEach((k, v) -> {
+				String first = firstKey.get(v);
+				if (failed.contains(first)) {
+					failedKeys.add(k);
+				} else {
+					out.put(k, plain.get(first));
+				}
+			});
+
+			if (!causes.isEmpty()) {
+				IllegalStateException ise = new IllegalStateException("Failed to decrypt " + failedKeys.size()
+						+ " of " + src.size() + " KMS properties: " + failedKeys, causes.get(0));
+				causes.stream().skip(1).forEach(ise::addSuppressed);
+				throw ise;
+			}
+
+			return out;
+		} finally {
+			exec.shutdownNow();
+		}
+
+	}
+
+	public int getParallelism() {
+		return parallelism;
+	}
+
+	private static int readParallelism() {
+		String v = System.getenv(PARALLELISM_VAR);
+		if (v == null || v.isEmpty()) {
+			return DEFAULT_PARALLELISM;
+		}
+		try {
+			int n = Integer.parseInt(v.trim());
+			if (n > 0) {
+				return n;
+			}
+		} catch (NumberFormatException e) {
+			// fall through to default
+		}
+		System.out.println("DecryptionPipeline: ignoring invalid " + PARALLELISM_VAR + "=[" + v + "]");
+		return DEFAULT_PARALLELISM;
+	}
+
+	private static class DecryptThreadFactory implements ThreadFactory {
+
+		private final AtomicInteger count = new AtomicInteger();
+
+		@Override
+		public Thread newThread(Runnable r) {
+			Thread t = new Thread(r, "kms-decrypt-" + count.incrementAndGet());
+			t.setDaemon(true);
+			return t;
+		}
+
+	}
+
+}
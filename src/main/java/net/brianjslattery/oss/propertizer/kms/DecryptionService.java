@@ -22,14 +22,70 @@
  */
 package net.brianjslattery.oss.propertizer.kms;
 
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+
 /**
  * 
  * @author Brian J Slattery <oss@brnsl.com>
  *
  */
 @FunctionalInterface
-public interface DecryptionService {
+public interface DecryptionService extends AutoCloseable {
 	
 	public String decrypt(String ciphertext);
+	
+	/**
+	 * Decrypt without blocking the caller. Blocking implementations
+	 * complete the future on the calling thread; non-blocking ones
+	 * (e.g. backed by {@code KmsAsyncClient}) should override this.
+	 * 
+	 * @param ciphertext the base64 ciphertext
+	 * @return a future holding the plaintext
+	 */
+	default CompletableFuture<String> decryptAsync(String ciphertext) {
+		return decryptAsync(ciphertext, Runnable::run);
+	}
+	
+	/**
+	 * Decrypt without blocking the caller, running blocking work on
+	 * the given executor. Non-blocking implementations may ignore it.
+	 * 
+	 * @param ciphertext the base64 ciphertext
+	 * @param executor where to run {@link #decrypt(String)} if it blocks
+	 * @return a future holding the plaintext
+	 */
+	default CompletableFuture<String> decryptAsync(String ciphertext, Executor executor) {
+		return CompletableFuture.supplyAsync(() -> decrypt(ciphertext), executor);
+	}
+
+	/**
+	 * Decrypt a batch of values, so the implementation can schedule them
+	 * together. The default runs a {@link DecryptionPipeline} over
+	 * {@link #decryptAsync(String, Executor)}: each distinct ciphertext
+	 * once, concurrently, failing the batch if any value fails.
+	 * 
+	 * @param src map of key to ciphertext
+	 * @return map of key to plaintext, sorted by key
+	 */
+	default Map<String, String> decryptAll(Map<String, String> src) {
+		return DecryptionPipeline.create(this).decryptAll(src);
+	}
+	
+	/**
+	 * Append run statistics (retries, cache hits, etc.) for the final report.
+	 * 
+	 * @param rpt the report to append to; untouched when there is nothing to say
+	 */
+	default void report(StringBuilder rpt) {
+	}
+	
+	/**
+	 * Release any clients or key material held by this service.
+	 */
+	@Override
+	default void close() {
+	}
 
 }
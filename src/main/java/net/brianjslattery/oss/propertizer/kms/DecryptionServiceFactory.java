@@ -22,32 +22,155 @@
  */
 package net.brianjslattery.oss.propertizer.kms;
 
-import software.amazon.awssdk.services.kms.KmsClient;
+import java.util.Arrays;
+import java.util.function.Function;
+
+import net.brianjslattery.oss.propertizer.utilities.Environment;
 
 /**
+ * Hands out one shared {@link DecryptionService} per flavour for the
+ * whole process. Each is built lazily on first use, with explicit HTTP
+ * settings (see {@link KmsClientSettings}), and closed at shutdown.
  * 
  * @author Brian J Slattery <oss@brnsl.com>
  * 
  */
 public class DecryptionServiceFactory {
 	
+	public static final String KEY_ID_VAR   = "KMS_KEY_ID";
+	public static final String DATA_KEY_VAR = "PROPERTIZER_DATA_KEY_KMS";
+	
+	// One policy, so the retry budget is shared by the whole run
+	private static final DecryptRetryPolicy RETRY = DecryptRetryPolicy.from(Environment.getDefault());
+	
+	private static final Shared SYNC  = new Shared(DecryptionServiceFactory::createService);
+	private static final Shared ASYNC = new Shared(DecryptionServiceFactory::createAsyncService);
+	
+	static {
+		Runtime.getRuntime().addShutdownHook(new Thread(DecryptionServiceFactory::shutdown, "kms-shutdown"));
+	}
+	
+	/**
+	 * 
+	 * @return the shared service backed by the blocking {@code KmsClient}, or an echo stub when no key is set
+	 */
 	public static DecryptionService getService() {
+		return SYNC.get();
+	}
+	
+	/**
+	 * 
+	 * @return the shared service backed by the non-blocking {@code KmsAsyncClient}, or an echo stub when no key is set
+	 */
+	public static DecryptionService getAsyncService() {
+		return ASYNC.get();
+	}
+	
+	/**
+	 * Start building the shared blocking service in the background, so
+	 * client set-up, credential lookup and the first connection overlap
+	 * with whatever the caller does next. No-op when no key is set.
+	 */
+	public static void warmUpService() {
+		SYNC.warmUp();
+	}
+	
+	/**
+	 * As {@link #warmUpService()}, for the shared non-blocking service.
+	 */
+	public static void warmUpAsyncService() {
+		ASYNC.warmUp();
+	}
+	
+	/**
+	 * Close the shared services and their clients. Safe to call more
+	 * than once; a later get builds fresh services.
+	 */
+	public static void shutdown() {
+		SYNC.close();
+		ASYNC.close();
+	}
+	
+	private static DecryptionService createService(boolean warm) {
 		
 		String keyId = getKey();
 		
 		if (keyId != null) {
-			KmsClient k = KmsClient
-					.builder()
-					.build();
+			KmsClientSettings settings = KmsClientSettings.from(Environment.getDefault());
+			System.out.println(settings);
 			
-			return new AwsKmsService(k, keyId);
+			AwsKmsService kms = AwsKmsClients.newService(keyId, settings, warm && !isEnvelope());
+			return withEnvelope(decorate(kms, settings), kms::decryptBytes);
 		} 
 		
 		return createStub();
 	}
 	
-	private static String getKey() {
-		return System.getenv("KMS_KEY_ID");
+	private static DecryptionService createAsyncService(boolean warm) {
+		
+		String keyId = getKey();
+		
+		if (keyId != null) {
+			KmsClientSettings settings = KmsClientSettings.from(Environment.getDefault());
+			System.out.println(settings);
+			
+			AwsKmsAsyncService kms = AwsKmsClients.newAsyncService(keyId, settings, warm && !isEnvelope());
+			return withEnvelope(decorate(kms, settings), kms::decryptBytes);
+		}
+		
+		return createStub();
+	}
+	
+	/**
+	 * Cache outermost, so duplicate ciphertexts never reach KMS. Retries
+	 * sit outside the limiter, so every attempt is admitted (and measured)
+	 * separately and backoff does not hold a slot. Hedges, when enabled,
+	 * go through the limiter too, and a retry only follows a hedged
+	 * attempt in which both calls failed.
+	 */
+	private static DecryptionService decorate(DecryptionService kms, KmsClientSettings settings) {
+		Environment env = Environment.getDefault();
+		AdaptiveLimiter limiter = AdaptiveLimiter.from(env, settings.getMaxConnections());
+		DecryptionService svc = new LimitingDecryptionService(kms, limiter);
+		if (HedgingDecryptionService.isEnabled(env)) {
+			svc = HedgingDecryptionService.from(env, svc);
+		}
+		svc = new RetryingDecryptionService(svc, RETRY);
+		return new CachingDecryptionService(svc);
+	}
+	
+	/**
+	 * When {@value #DATA_KEY_VAR} is set, decrypt it once with KMS and
+	 * decrypt every value locally under it instead of calling KMS per value.
+	 * The KMS service is no longer needed afterwards and is closed.
+	 */
+	private static DecryptionService withEnvelope(DecryptionService kms, Function<String, byte[]> keyDecryptor) {
+		
+		if (!isEnvelope()) {
+			return kms;
+		}
+		
+		String dataKey = System.getenv(DATA_KEY_VAR);
+		byte[] key = RETRY.execute(() -> keyDecryptor.apply(dataKey));
+		try {
+			return new EnvelopeDecryptionService(key);
+		} finally {
+			Arrays.fill(key, (byte) 0);
+			kms.close();
+		}
+	}
+	
+	/**
+	 * In envelope mode the data key decrypt is the only KMS call, and is
+	 * made while building the service, so it needs no separate warm-up.
+	 */
+	private static boolean isEnvelope() {
+		String dataKey = System.getenv(DATA_KEY_VAR);
+		return dataKey != null && !dataKey.isEmpty();
+	}
+	
+	static String getKey() {
+		return System.getenv(KEY_ID_VAR);
 	}
 	
 	private static DecryptionService createStub() {
@@ -57,6 +180,72 @@ public class DecryptionServiceFactory {
 		};
 	}
 	
+	private interface Builder {
+		
+		/**
+		 * 
+		 * @param warm also resolve credentials and open a connection before returning
+		 */
+		DecryptionService build(boolean warm);
+		
+	}
+	
+	/**
+	 * Lazily built, thread-safe holder for one shared service.
+	 */
+	private static final class Shared {
+		
+		private final Builder builder;
+		private DecryptionService instance;
+		
+		Shared(Builder builder) {
+			this.builder = builder;
+		}
+		
+		synchronized DecryptionService get() {
+			return get(false);
+		}
+		
+		private synchronized DecryptionService get(boolean warm) {
+			if (instance == null) {
+				instance = builder.build(warm);
+			}
+			return instance;
+		}
+		
+		/**
+		 * A caller of {@link #get()} meanwhile waits on the lock for the
+		 * build in progress rather than starting a second one.
+		 */
+		void warmUp() {
+			if (getKey() == null) {
+				return;
+			}
+			Thread t = new Thread(() -> {
+				try {
+					get(true);
+				} catch (RuntimeException e) {
+					// The caller's own get() retries and reports the failure
+					System.out.println("DecryptionServiceFactory: warm-up failed: " + e.getMessage());
+				}
+			}, "kms-warmup");
+			t.setDaemon(true);
+			t.start();
+		}
+		
+		synchronized void close() {
+			if (instance != null) {
+				try {
+					instance.close();
+				} catch (RuntimeException e) {
+					System.out.println("DecryptionServiceFactory: failed to close " + instance.getClass().getSimpleName() + ": " + e.getMessage());
+				}
+				instance = null;
+			}
+		}
+		
+	}
+	
 	private DecryptionServiceFactory() {
 	}
 	
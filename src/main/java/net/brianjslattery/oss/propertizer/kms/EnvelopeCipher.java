@@ -0,0 +1,107 @@
+/**
+ * Copyright © 2021 Brian J Slattery <oss@brnsl.com>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the “Software”), to
+ * deal in the Software without restriction, including without limitation the
+ * rights to use, copy, modify, merge, publish, distribute, sublicense, and/or
+ * sell copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED “AS IS”, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ * 
+ */
+package net.brianjslattery.oss.propertizer.kms;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import java.nio.ByteBuffer;
+import java.security.GeneralSecurityException;
+import java.security.SecureRandom;
+import java.util.Arrays;
+import java.util.Base64;
+
+import javax.crypto.Cipher;
+import javax.crypto.spec.GCMParameterSpec;
+import javax.crypto.spec.SecretKeySpec;
+
+/**
+ * Local AES-GCM encryption of values under a KMS data key.
+ * 
+ * Format (base64): version (1 byte) | IV (12 bytes) | ciphertext + tag
+ * 
+ * @author Brian J Slattery <oss@brnsl.com>
+ * 
+ */
+final class EnvelopeCipher {
+	
+	private static final String TRANSFORMATION = "AES/GCM/NoPadding";
+	private static final String ALGORITHM      = "AES";
+	
+	private static final byte VERSION  = 1;
+	private static final int IV_LEN    = 12;
+	private static final int TAG_BITS  = 128;
+	private static final int TAG_LEN   = TAG_BITS / 8;
+	
+	private static final SecureRandom RANDOM = new SecureRandom();
+	
+	static String encrypt(byte[] key, String plaintext) {
+		
+		byte[] iv = new byte[IV_LEN];
+		RANDOM.nextBytes(iv);
+		
+		byte[] in = plaintext.getBytes(UTF_8);
+		try {
+			Cipher c = Cipher.getInstance(TRANSFORMATION);
+			c.init(Cipher.ENCRYPT_MODE, new SecretKeySpec(key, ALGORITHM), new GCMParameterSpec(TAG_BITS, iv));
+			byte[] ct = c.doFinal(in);
+			
+			ByteBuffer out = ByteBuffer.allocate(1 + IV_LEN + ct.length);
+			out.put(VERSION).put(iv).put(ct);
+			return Base64.getEncoder().encodeToString(out.array());
+		} catch (GeneralSecurityException e) {
+			throw new IllegalStateException("Failed to envelope encrypt value.", e);
+		} finally {
+			Arrays.fill(in, (byte) 0);
+		}
+		
+	}
+	
+	static String decrypt(byte[] key, String ciphertext) {
+		
+		byte[] in = Base64.getDecoder().decode(ciphertext);
+		
+		if (in.length < 1 + IV_LEN + TAG_LEN) {
+			throw new IllegalArgumentException("Envelope ciphertext is too short: " + in.length + " bytes.");
+		}
+		if (in[0] != VERSION) {
+			throw new IllegalArgumentException("Unsupported envelope version " + in[0] + ".");
+		}
+		
+		byte[] pt = null;
+		try {
+			Cipher c = Cipher.getInstance(TRANSFORMATION);
+			c.init(Cipher.DECRYPT_MODE, new SecretKeySpec(key, ALGORITHM), new GCMParameterSpec(TAG_BITS, in, 1, IV_LEN));
+			pt = c.doFinal(in, 1 + IV_LEN, in.length - 1 - IV_LEN);
+			return new String(pt, UTF_8);
+		} catch (GeneralSecurityException e) {
+			throw new IllegalStateException("Failed to envelope decrypt value.", e);
+		} finally {
+			if (pt != null) Arrays.fill(pt, (byte) 0);
+		}
+		
+	}
+	
+	private EnvelopeCipher() {
+	}
+	
+}
@@ -0,0 +1,70 @@
+/**
+ * Copyright © 2021 Brian J Slattery <oss@brnsl.com>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the “Software”), to
+ * deal in the Software without restriction, including without limitation the
+ * rights to use, copy, modify, merge, publish, distribute, sublicense, and/or
+ * sell copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED “AS IS”, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ * 
+ */
+package net.brianjslattery.oss.propertizer.kms;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Decrypts values locally with a data key that was itself KMS
+ * decrypted once for the run, so N values cost one KMS call.
+ * 
+ * @author Brian J Slattery <oss@brnsl.com>
+ * 
+ */
+class EnvelopeDecryptionService implements DecryptionService {
+	
+	private final byte[] dataKey;
+	private final AtomicInteger decrypts = new AtomicInteger();
+	
+	EnvelopeDecryptionService(byte[] dataKey) {
+		this.dataKey = dataKey.clone();
+		System.out.println("Loaded EnvelopeDecryptionService with a " + (dataKey.length * 8) + " bit data key");
+	}
+
+	@Override
+	public String decrypt(String ciphertext) {
+		try {
+			String plaintext = EnvelopeCipher.decrypt(dataKey, ciphertext);
+			decrypts.incrementAndGet();
+			return plaintext;
+		} catch (RuntimeException e) {
+			AwsKmsService.logFailure(ciphertext, e);
+			throw e;
+		}
+	}
+	
+	@Override
+	public void report(StringBuilder rpt) {
+		rpt.append("Envelope mode: local decrypts=[").append(decrypts.get()).append("], KMS calls=[1].\n");
+	}
+	
+	/**
+	 * Wipes the data key.
+	 */
+	@Override
+	public void close() {
+		Arrays.fill(dataKey, (byte) 0);
+	}
+	
+}
@@ -0,0 +1,128 @@
+/**
+ * Copyright © 2021 Brian J Slattery <oss@brnsl.com>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the “Software”), to
+ * deal in the Software without restriction, including without limitation the
+ * rights to use, copy, modify, merge, publish, distribute, sublicense, and/or
+ * sell copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED “AS IS”, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ * 
+ */
+package net.brianjslattery.oss.propertizer.kms;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.util.Arrays;
+import java.util.Base64;
+
+import software.amazon.awssdk.services.kms.KmsClient;
+import software.amazon.awssdk.services.kms.model.DataKeySpec;
+import software.amazon.awssdk.services.kms.model.GenerateDataKeyRequest;
+import software.amazon.awssdk.services.kms.model.GenerateDataKeyResponse;
+
+/**
+ * Encrypt-side helper for envelope mode.
+ * 
+ * ex: genkey                  prints a new KMS encrypted data key for PROPERTIZER_DATA_KEY_KMS
+ * ex: encrypt &lt; secrets.txt  prints one envelope ciphertext per input line
+ * 
+ * Both commands use KMS_KEY_ID; encrypt also reads PROPERTIZER_DATA_KEY_KMS.
+ * Plaintexts are read from stdin so they do not end up in the process list.
+ * 
+ * @author Brian J Slattery <oss@brnsl.com>
+ * 
+ */
+public class EnvelopeEncryptor {
+	
+	private static final String USAGE = "Usage: EnvelopeEncryptor genkey | encrypt < plaintexts";
+	
+	public static void main(String[] args) throws IOException {
+		
+		if (args.length != 1) {
+			System.err.println(USAGE);
+			System.exit(1);
+		}
+		
+		String keyId = DecryptionServiceFactory.getKey();
+		if (keyId == null) {
+			throw new IllegalArgumentException("Property [" + DecryptionServiceFactory.KEY_ID_VAR + "] cannot be null or empty.");
+		}
+		
+		try (KmsClient kms = KmsClient.builder().build()) {
+			if ("genkey".equals(args[0])) {
+				System.out.println(generateDataKey(kms, keyId));
+			} else if ("encrypt".equals(args[0])) {
+				encryptLines(new AwsKmsService(kms, keyId));
+			} else {
+				System.err.println(USAGE);
+				System.exit(1);
+			}
+		}
+		
+	}
+	
+	/**
+	 * 
+	 * @return a base64 KMS ciphertext of a new AES-256 data key
+	 */
+	static String generateDataKey(KmsClient kms, String keyId) {
+		
+		GenerateDataKeyRequest req = GenerateDataKeyRequest
+				.builder()
+				.keyId(keyId)
+				.keySpec(DataKeySpec.AES_256)
+				.build();
+		
+		GenerateDataKeyResponse res = kms.generateDataKey(req);
+		return Base64.getEncoder().encodeToString(res.ciphertextBlob().asByteArray());
+		
+	}
+	
+	/**
+	 * 
+	 * @param dataKey the plaintext data key
+	 * @param plaintext the value to protect
+	 * @return a value suitable for a _KMS variable in envelope mode
+	 */
+	public static String encrypt(byte[] dataKey, String plaintext) {
+		return EnvelopeCipher.encrypt(dataKey, plaintext);
+	}
+	
+	private static void encryptLines(AwsKmsService kms) throws IOException {
+		
+		String encDataKey = System.getenv(DecryptionServiceFactory.DATA_KEY_VAR);
+		if (encDataKey == null || encDataKey.isEmpty()) {
+			throw new IllegalArgumentException("Property [" + DecryptionServiceFactory.DATA_KEY_VAR + "] cannot be null or empty.");
+		}
+		
+		byte[] dataKey = kms.decryptBytes(encDataKey);
+		try (BufferedReader in = new BufferedReader(new InputStreamReader(System.in, UTF_8))) {
+			String line;
+			while ((line = in.readLine()) != null) {
+				System.out.println(encrypt(dataKey, line));
+			}
+		} finally {
+			Arrays.fill(dataKey, (byte) 0);
+		}
+		
+	}
+	
+	private EnvelopeEncryptor() {
+	}
+	
+}
@@ -0,0 +1,301 @@
+/**
+ * Copyright © 2021 Brian J Slattery <oss@brnsl.com>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the “Software”), to
+ * deal in the Software without restriction, including without limitation the
+ * rights to use, copy, modify, merge, publish, distribute, sublicense, and/or
+ * sell copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED “AS IS”, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ * 
+ */
+package net.brianjslattery.oss.propertizer.kms;
+
+import java.util.Arrays;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import net.brianjslattery.oss.propertizer.utilities.Environment;
+
+/**
+ * Hedged decrypts: when a call has not returned within the observed
+ * {@code percentile} latency, a duplicate is sent and the first response
+ * wins. Extra calls are capped at {@code maxExtraPercent} of primaries.
+ * 
+ * @author Brian J Slattery <oss@brnsl.com>
+ * 
+ */
+class HedgingDecryptionService implements DecryptionService {
+	
+	static final String ENABLED_VAR     = "KMS_HEDGE";
+	static final String PERCENTILE_VAR  = "KMS_HEDGE_PERCENTILE";
+	static final String MAX_PERCENT_VAR = "KMS_HEDGE_MAX_PERCENT";
+	static final String DELAY_VAR       = "KMS_HEDGE_INITIAL_DELAY_MILLIS";
+	
+	private static final long DEFAULT_PERCENTILE    = 95;
+	private static final long DEFAULT_MAX_PERCENT   = 10;
+	private static final long DEFAULT_INITIAL_DELAY = 100;
+	// Below this many samples the percentile is noise; use the initial delay
+	private static final int MIN_SAMPLES = 10;
+	private static final int WINDOW      = 256;
+	
+	private final DecryptionService delegate;
+	private final int percentile;
+	private final int maxExtraPercent;
+	private final long initialDelayMillis;
+	private final ExecutorService hedgePool;
+	
+	private final LatencyWindow callLatency     = new LatencyWindow(WINDOW);
+	private final LatencyWindow primaryLatency  = new LatencyWindow(WINDOW);
+	private final LatencyWindow observedLatency = new LatencyWindow(WINDOW);
+	
+	private final AtomicInteger primaries = new AtomicInteger();
+	private final AtomicInteger hedges    = new AtomicInteger();
+	private final AtomicInteger hedgeWins = new AtomicInteger();
+	
+	HedgingDecryptionService(DecryptionService delegate, int percentile, int maxExtraPercent, long initialDelayMillis) {
+		this.delegate           = delegate;
+		this.percentile         = percentile;
+		this.maxExtraPercent    = maxExtraPercent;
+		this.initialDelayMillis = initialDelayMillis;
+		this.hedgePool          = Executors.newCachedThreadPool(r -> {
+			Thread t = new Thread(r, "kms-hedge");
+			t.setDaemon(true);
+			return t;
+		});
+	}
+	
+	static boolean isEnabled(Environment env) {
+		return Boolean.parseBoolean(env.get(ENABLED_VAR));
+	}
+	
+	static HedgingDecryptionService from(Environment env, DecryptionService delegate) {
+		return new HedgingDecryptionService(delegate,
+				(int) Math.min(99, KmsClientSettings.getLong(env, PERCENTILE_VAR, DEFAULT_PERCENTILE)),
+				(int) KmsClientSettings.getLong(env, MAX_PERCENT_VAR, DEFAULT_MAX_PERCENT),
+				KmsClientSettings.getLong(env, DELAY_VAR, DEFAULT_INITIAL_DELAY));
+	}
+
+	@Override
+	public String decrypt(String ciphertext) {
+		try {
+			return decryptAsync(ciphertext).join();
+		} catch (CompletionException e) {
+			if (e.getCause() instanceof RuntimeException) {
+				throw (RuntimeException) e.getCause();
+			}
+			throw e;
+		}
+	}
+	
+	@Override
+	public CompletableFuture<String> decryptAsync(String ciphertext) {
+		return decryptAsync(ciphertext, hedgePool);
+	}
+	
+	/**
+	 * Blocking delegates run on the given executor; hedges always run on
+	 * a separate pool, so a hedge is never queued behind its own primary.
+	 */
+	@Override
+	public CompletableFuture<String> decryptAsync(String ciphertext, Executor executor) {
+		
+		primaries.incrementAndGet();
+		
+		long start = System.nanoTime();
+		Race race  = new Race(start);
+		
+		// Armed first, since a blocking delegate may run the primary inline
+		long delay = hedgeDelayMillis();
+		Executor later = CompletableFuture.delayedExecutor(delay, TimeUnit.MILLISECONDS, hedgePool);
+		later.execute(() -> {
+			if (race.result.isDone() || !race.startHedge()) {
+				return;
+			}
+			if (!reserveHedge()) {
+				race.cancelHedge();
+				return;
+			}
+			call(ciphertext, hedgePool).whenComplete((v, t) -> race.onResult(v, t, true));
+		});
+		
+		call(ciphertext, executor).whenComplete((v, t) -> {
+			primaryLatency.add(System.nanoTime() - start);
+			race.onResult(v, t, false);
+		});
+		
+		return race.result;
+		
+	}
+	
+	private CompletableFuture<String> call(String ciphertext, Executor executor) {
+		long start = System.nanoTime();
+		CompletableFuture<String> f;
+		try {
+			f = delegate.decryptAsync(ciphertext, executor);
+		} catch (RuntimeException e) {
+			f = CompletableFuture.failedFuture(e);
+		}
+		return f.whenComplete((v, t) -> {
+			if (t == null) callLatency.add(System.nanoTime() - start);
+		});
+	}
+	
+	private boolean reserveHedge() {
+		int allowed = Math.max(1, primaries.get() * maxExtraPercent / 100);
+		int h;
+		do {
+			h = hedges.get();
+			if (h >= allowed) return false;
+		} while (!hedges.compareAndSet(h, h + 1));
+		return true;
+	}
+	
+	long hedgeDelayMillis() {
+		long p = callLatency.percentile(percentile, MIN_SAMPLES);
+		return p < 0 ? initialDelayMillis : Math.max(1, TimeUnit.NANOSECONDS.toMillis(p));
+	}
+	
+	int getHedges() {
+		return hedges.get();
+	}
+	
+	int getHedgeWins() {
+		return hedgeWins.get();
+	}
+	
+	@Override
+	public void report(StringBuilder rpt) {
+		rpt.append("KMS hedging: calls=[").append(primaries.get())
+		   .append("], extraCalls=[").append(hedges.get())
+		   .append("], hedgeWins=[").append(hedgeWins.get())
+		   .append("], hedgeDelayMillis=[").append(hedgeDelayMillis())
+		   .append("], p50Millis=[").append(millis(observedLatency.percentile(50, 1)))
+		   .append("], p99Millis=[").append(millis(observedLatency.percentile(99, 1)))
+		   .append("], p99WithoutHedgingMillis=[").append(millis(primaryLatency.percentile(99, 1)))
+		   .append("].\n");
+		delegate.report(rpt);
+	}
+	
+	@Override
+	public void close() {
+		hedgePool.shutdownNow();
+		delegate.close();
+	}
+	
+	private static long millis(long nanos) {
+		return nanos < 0 ? 0 : TimeUnit.NANOSECONDS.toMillis(nanos);
+	}
+	
+	/**
+	 * First success wins; fails only once every started attempt has failed.
+	 */
+	private class Race {
+		
+		private final long start;
+		private final CompletableFuture<String> result = new CompletableFuture<>();
+		// guarded by this
+		private int outstanding = 1;
+		private boolean hedgeDecided;
+		private Throwable lastError;
+		private boolean won;
+		
+		Race(long start) {
+			this.start = start;
+		}
+		
+		synchronized boolean startHedge() {
+			if (hedgeDecided) return false;
+			hedgeDecided = true;
+			outstanding++;
+			return true;
+		}
+		
+		/**
+		 * Undoes {@link #startHedge()} when the extra-call budget is spent.
+		 */
+		void cancelHedge() {
+			Throwable pending;
+			synchronized (this) {
+				outstanding--;
+				pending = outstanding == 0 ? lastError : null;
+			}
+			if (pending != null) result.completeExceptionally(pending);
+		}
+		
+		void onResult(String v, Throwable t, boolean hedge) {
+			if (t == null) {
+				synchronized (this) {
+					if (won) return;
+					won = true;
+				}
+				// Counted before completing, so callers see consistent stats
+				observedLatency.add(System.nanoTime() - start);
+				if (hedge) hedgeWins.incrementAndGet();
+				result.complete(v);
+				return;
+			}
+			Throwable cause = t instanceof CompletionException && t.getCause() != null ? t.getCause() : t;
+			boolean fail;
+			synchronized (this) {
+				outstanding--;
+				lastError = cause;
+				// A primary failing before the hedge timer fires also ends the race
+				hedgeDecided = true;
+				fail = outstanding == 0 && !won;
+			}
+			if (fail) result.completeExceptionally(cause);
+		}
+		
+	}
+	
+	/**
+	 * Ring buffer of recent latencies in nanos.
+	 */
+	private static class LatencyWindow {
+		
+		private final long[] samples;
+		private int count;
+		private int next;
+		
+		LatencyWindow(int size) {
+			this.samples = new long[size];
+		}
+		
+		synchronized void add(long nanos) {
+			samples[next] = nanos;
+			next = (next + 1) % samples.length;
+			count = Math.min(count + 1, samples.length);
+		}
+		
+		/**
+		 * 
+		 * @return the percentile, or -1 with fewer than {@code minSamples} samples
+		 */
+		synchronized long percentile(int pct, int minSamples) {
+			if (count < minSamples || count == 0) return -1;
+			long[] sorted = Arrays.copyOf(samples, count);
+			Arrays.sort(sorted);
+			int idx = (int) Math.ceil(pct / 100.0 * count) - 1;
+			return sorted[Math.max(0, Math.min(idx, count - 1))];
+		}
+		
+	}
+	
+}
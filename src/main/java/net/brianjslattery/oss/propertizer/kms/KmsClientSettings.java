@@ -0,0 +1,127 @@
+/**
+ * Copyright © 2021 Brian J Slattery <oss@brnsl.com>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the “Software”), to
+ * deal in the Software without restriction, including without limitation the
+ * rights to use, copy, modify, merge, publish, distribute, sublicense, and/or
+ * sell copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED “AS IS”, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ * 
+ */
+package net.brianjslattery.oss.propertizer.kms;
+
+import java.time.Duration;
+
+import net.brianjslattery.oss.propertizer.utilities.Environment;
+import software.amazon.awssdk.http.apache.ApacheHttpClient;
+import software.amazon.awssdk.http.nio.netty.NettyNioAsyncHttpClient;
+
+/**
+ * HTTP settings for the shared KMS clients, read from the environment.
+ * 
+ * @author Brian J Slattery <oss@brnsl.com>
+ * 
+ */
+class KmsClientSettings {
+	
+	static final String MAX_CONNECTIONS_VAR = "KMS_MAX_CONNECTIONS";
+	static final String CONNECTION_TTL_VAR  = "KMS_CONNECTION_TTL_MILLIS";
+	static final String SOCKET_TIMEOUT_VAR  = "KMS_SOCKET_TIMEOUT_MILLIS";
+	static final String CONNECT_TIMEOUT_VAR = "KMS_CONNECT_TIMEOUT_MILLIS";
+	
+	private static final int  DEFAULT_MAX_CONNECTIONS = 16;
+	private static final long DEFAULT_CONNECTION_TTL  = 60_000;
+	private static final long DEFAULT_SOCKET_TIMEOUT  = 5_000;
+	private static final long DEFAULT_CONNECT_TIMEOUT = 2_000;
+	
+	private final int maxConnections;
+	private final Duration connectionTtl;
+	private final Duration socketTimeout;
+	private final Duration connectTimeout;
+	
+	KmsClientSettings(int maxConnections, Duration connectionTtl, Duration socketTimeout, Duration connectTimeout) {
+		this.maxConnections = maxConnections;
+		this.connectionTtl  = connectionTtl;
+		this.socketTimeout  = socketTimeout;
+		this.connectTimeout = connectTimeout;
+	}
+	
+	static KmsClientSettings from(Environment env) {
+		return new KmsClientSettings(
+				(int) getLong(env, MAX_CONNECTIONS_VAR, DEFAULT_MAX_CONNECTIONS),
+				Duration.ofMillis(getLong(env, CONNECTION_TTL_VAR,  DEFAULT_CONNECTION_TTL)),
+				Duration.ofMillis(getLong(env, SOCKET_TIMEOUT_VAR,  DEFAULT_SOCKET_TIMEOUT)),
+				Duration.ofMillis(getLong(env, CONNECT_TIMEOUT_VAR, DEFAULT_CONNECT_TIMEOUT)));
+	}
+	
+	ApacheHttpClient.Builder apacheClient() {
+		return ApacheHttpClient.builder()
+				.maxConnections(maxConnections)
+				.connectionTimeToLive(connectionTtl)
+				.socketTimeout(socketTimeout)
+				.connectionTimeout(connectTimeout);
+	}
+	
+	NettyNioAsyncHttpClient.Builder nettyClient() {
+		return NettyNioAsyncHttpClient.builder()
+				.maxConcurrency(maxConnections)
+				.connectionTimeToLive(connectionTtl)
+				.readTimeout(socketTimeout)
+				.writeTimeout(socketTimeout)
+				.connectionTimeout(connectTimeout);
+	}
+	
+	int getMaxConnections() {
+		return maxConnections;
+	}
+
+	Duration getConnectionTtl() {
+		return connectionTtl;
+	}
+
+	Duration getSocketTimeout() {
+		return socketTimeout;
+	}
+
+	Duration getConnectTimeout() {
+		return connectTimeout;
+	}
+	
+	static long getLong(Environment env, String name, long def) {
+		String v = env.get(name);
+		if (v == null || v.isEmpty()) {
+			return def;
+		}
+		try {
+			long l = Long.parseLong(v.trim());
+			if (l > 0) return l;
+		} catch (NumberFormatException e) {
+			// fall through to default
+		}
+		System.out.println("KMS settings: ignoring invalid " + name + "=[" + v + "]");
+		return def;
+	}
+	
+	@Override
+	public String toString() {
+		return new StringBuilder("KmsClientSettings: ")
+				.append("maxConnections=").append(maxConnections)
+				.append(", connectionTtl=").append(connectionTtl)
+				.append(", socketTimeout=").append(socketTimeout)
+				.append(", connectTimeout=").append(connectTimeout)
+				.toString();
+	}
+	
+}
@@ -0,0 +1,112 @@
+/**
+ * Copyright © 2021 Brian J Slattery <oss@brnsl.com>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the “Software”), to
+ * deal in the Software without restriction, including without limitation the
+ * rights to use, copy, modify, merge, publish, distribute, sublicense, and/or
+ * sell copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED “AS IS”, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ * 
+ */
+package net.brianjslattery.oss.propertizer.kms;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+
+import net.brianjslattery.oss.propertizer.kms.DecryptRetryPolicy.ErrorClass;
+
+/**
+ * Puts an {@link AdaptiveLimiter} in front of the wrapped service and
+ * feeds it the latency and throttling of every call.
+ * 
+ * @author Brian J Slattery <oss@brnsl.com>
+ * 
+ */
+class LimitingDecryptionService implements DecryptionService {
+	
+	private final DecryptionService delegate;
+	private final AdaptiveLimiter limiter;
+	
+	LimitingDecryptionService(DecryptionService delegate, AdaptiveLimiter limiter) {
+		this.delegate = delegate;
+		this.limiter  = limiter;
+	}
+
+	@Override
+	public String decrypt(String ciphertext) {
+		
+		try {
+			limiter.acquire().join();
+		} catch (CompletionException e) {
+			throw (RuntimeException) e.getCause();
+		}
+		
+		long start = System.nanoTime();
+		try {
+			String res = delegate.decrypt(ciphertext);
+			limiter.onSuccess(System.nanoTime() - start);
+			return res;
+		} catch (RuntimeException e) {
+			release(e);
+			throw e;
+		}
+		
+	}
+	
+	@Override
+	public CompletableFuture<String> decryptAsync(String ciphertext, Executor executor) {
+		return limiter.acquire().thenCompose(x -> {
+			long start = System.nanoTime();
+			CompletableFuture<String> f;
+			try {
+				f = delegate.decryptAsync(ciphertext, executor);
+			} catch (RuntimeException e) {
+				f = CompletableFuture.failedFuture(e);
+			}
+			return f.whenComplete((v, t) -> {
+				if (t == null) {
+					limiter.onSuccess(System.nanoTime() - start);
+				} else {
+					release(t);
+				}
+			});
+		});
+	}
+	
+	private void release(Throwable t) {
+		if (DecryptRetryPolicy.classify(t) == ErrorClass.THROTTLING) {
+			limiter.onThrottled();
+		} else {
+			limiter.onIgnore();
+		}
+	}
+	
+	AdaptiveLimiter getLimiter() {
+		return limiter;
+	}
+	
+	@Override
+	public void report(StringBuilder rpt) {
+		limiter.report(rpt);
+		delegate.report(rpt);
+	}
+	
+	@Override
+	public void close() {
+		delegate.close();
+	}
+	
+}
@@ -0,0 +1,66 @@
+/**
+ * Copyright © 2021 Brian J Slattery <oss@brnsl.com>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the “Software”), to
+ * deal in the Software without restriction, including without limitation the
+ * rights to use, copy, modify, merge, publish, distribute, sublicense, and/or
+ * sell copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED “AS IS”, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ * 
+ */
+package net.brianjslattery.oss.propertizer.kms;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+
+/**
+ * Applies a {@link DecryptRetryPolicy} to every decrypt of the
+ * wrapped service, blocking or not.
+ * 
+ * @author Brian J Slattery <oss@brnsl.com>
+ * 
+ */
+class RetryingDecryptionService implements DecryptionService {
+	
+	private final DecryptionService delegate;
+	private final DecryptRetryPolicy policy;
+	
+	RetryingDecryptionService(DecryptionService delegate, DecryptRetryPolicy policy) {
+		this.delegate = delegate;
+		this.policy   = policy;
+	}
+
+	@Override
+	public String decrypt(String ciphertext) {
+		return policy.execute(() -> delegate.decrypt(ciphertext));
+	}
+	
+	@Override
+	public CompletableFuture<String> decryptAsync(String ciphertext, Executor executor) {
+		return policy.executeAsync(() -> delegate.decryptAsync(ciphertext, executor), executor);
+	}
+	
+	@Override
+	public void report(StringBuilder rpt) {
+		policy.report(rpt);
+		delegate.report(rpt);
+	}
+	
+	@Override
+	public void close() {
+		delegate.close();
+	}
+	
+}
@@ -0,0 +1,262 @@
+/**
+ * Copyright © 2021 Brian J Slattery <oss@brnsl.com>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the “Software”), to
+ * deal in the Software without restriction, including without limitation the
+ * rights to use, copy, modify, merge, publish, distribute, sublicense, and/or
+ * sell copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED “AS IS”, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ * 
+ */
+package net.brianjslattery.oss.propertizer.utilities;
+
+import static java.time.temporal.ChronoField.NANO_OF_SECOND;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeFormatterBuilder;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Retention for the {@code .bak} files {@link Utilities#createBackupFile(Path)}
+ * leaves: backups beyond {@value #MAX_COUNT_VAR} or older than
+ * {@value #MAX_AGE_DAYS_VAR} are deleted, and with {@value #COMPRESS_VAR}
+ * every kept backup but the newest is gzipped. Pruning runs on a
+ * background thread, so it never holds up a write; {@link #shutdown()}
+ * waits for it before the run ends.
+ * 
+ * With neither limit set, every backup is kept, as before.
+ * 
+ * @author Brian J Slattery <oss@brnsl.com>
+ * 
+ */
+public final class BackupRotation {
+	
+	public static final String MAX_COUNT_VAR    = "PROPERTIZER_BACKUP_MAX_COUNT";
+	public static final String MAX_AGE_DAYS_VAR = "PROPERTIZER_BACKUP_MAX_AGE_DAYS";
+	public static final String COMPRESS_VAR     = "PROPERTIZER_BACKUP_COMPRESS";
+	
+	static final String BAK_SFX = ".bak";
+	static final String GZ_SFX  = ".gz";
+	
+	private static final long SHUTDOWN_WAIT_SECONDS = 30;
+	
+	// Matches the names Utilities gives backups, ISO_LOCAL_DATE_TIME with ':' replaced by '-'
+	private static final DateTimeFormatter BACKUP_TIME = new DateTimeFormatterBuilder()
+			.appendPattern("yyyy-MM-dd'T'HH-mm[-ss]")
+			.optionalStart().appendFraction(NANO_OF_SECOND, 0, 9, true).optionalEnd()
+			.toFormatter();
+	
+	private static ExecutorService exec;
+	
+	private final int maxCount;
+	private final Duration maxAge;
+	private final boolean compress;
+	
+	/**
+	 * 
+	 * @param maxCount backups to keep, or 0 for no limit
+	 * @param maxAge oldest backup to keep, or null for no limit
+	 * @param compress whether to gzip kept backups other than the newest
+	 */
+	BackupRotation(int maxCount, Duration maxAge, boolean compress) {
+		this.maxCount = maxCount;
+		this.maxAge   = maxAge;
+		this.compress = compress;
+	}
+	
+	static BackupRotation from(Environment env) {
+		int count = (int) readLong(env, MAX_COUNT_VAR);
+		long days = readLong(env, MAX_AGE_DAYS_VAR);
+		return new BackupRotation(Math.max(count, 0), days > 0 ? Duration.ofDays(days) : null,
+				Boolean.parseBoolean(env.get(COMPRESS_VAR)));
+	}
+	
+	boolean isEnabled() {
+		return maxCount > 0 || maxAge != null || compress;
+	}
+	
+	/**
+	 * Prune the backups of {@code path} in the background, if a policy is configured.
+	 */
+	static void schedule(Path path) {
+		BackupRotation rotation = from(Environment.getDefault());
+		if (!rotation.isEnabled()) {
+			return;
+		}
+		executor().execute(() -> {
+			try {
+				rotation.prune(path, LocalDateTime.now());
+			} catch (IOException | RuntimeException e) {
+				System.out.println("BackupRotation: could not prune backups of (" + path + "). Message: " + e.getMessage());
+			}
+		});
+	}
+	
+	/**
+	 * Wait for pending pruning, then stop the background thread.
+	 */
+	public static void shutdown() {
+		ExecutorService e;
+		synchronized (BackupRotation.class) {
+			e = exec;
+			exec = null;
+		}
+		if (e == null) {
+			return;
+		}
+		e.shutdown();
+		try {
+			if (!e.awaitTermination(SHUTDOWN_WAIT_SECONDS, TimeUnit.SECONDS)) {
+				System.out.println("BackupRotation: pruning still running after " + SHUTDOWN_WAIT_SECONDS + " seconds; leaving it.");
+			}
+		} catch (InterruptedException ie) {
+			Thread.currentThread().interrupt();
+		}
+	}
+	
+	/**
+	 * Apply the policy to the backups of {@code path} now.
+	 */
+	void prune(Path path, LocalDateTime now) throws IOException {
+		
+		List<Backup> backups = list(path);
+		backups.sort(Comparator.comparing((Backup b) -> b.time).reversed());
+		
+		int deleted = 0;
+		int compressed = 0;
+		for (int i = 0; i < backups.size(); i++) {
+			Backup b = backups.get(i);
+			boolean tooMany = maxCount > 0 && i >= maxCount;
+			// The newest backup is always kept
+			boolean tooOld = i > 0 && maxAge != null && b.time.isBefore(now.minus(maxAge));
+			if (tooMany || tooOld) {
+				Files.deleteIfExists(b.file);
+				deleted++;
+			} else if (compress && i > 0 && !b.compressed) {
+				gzip(b.file);
+				compressed++;
+			}
+		}
+		if (deleted > 0 || compressed > 0) {
+			System.out.println("BackupRotation: backups of (" + path + "): kept=[" + (backups.size() - deleted)
+					+ "], deleted=[" + deleted + "], compressed=[" + compressed + "].");
+		}
+	}
+	
+	private static List<Backup> list(Path path) throws IOException {
+		Path dir = path.toAbsolutePath().getParent();
+		String prefix = path.getFileName() + "-";
+		List<Backup> backups = new ArrayList<>();
+		try (Stream<Path> files = Files.list(dir)) {
+			for (Path f : files.collect(Collectors.toList())) {
+				String name = f.getFileName().toString();
+				boolean gz = name.endsWith(BAK_SFX + GZ_SFX);
+				if (!name.startsWith(prefix) || !(gz || name.endsWith(BAK_SFX))) {
+					continue;
+				}
+				String stamp = name.substring(prefix.length(), name.length() - BAK_SFX.length() - (gz ? GZ_SFX.length() : 0));
+				try {
+					backups.add(new Backup(f, LocalDateTime.parse(stamp, BACKUP_TIME), gz));
+				} catch (DateTimeParseException e) {
+					// Not one of ours
+				}
+			}
+		}
+		return backups;
+	}
+	
+	/**
+	 * Replace a backup with a gzipped copy; the original goes only once the copy is complete.
+	 */
+	private static void gzip(Path bak) throws IOException {
+		Path gz  = bak.resolveSibling(bak.getFileName() + GZ_SFX);
+		Path tmp = bak.resolveSibling(bak.getFileName() + GZ_SFX + ".tmp");
+		try {
+			try (InputStream in = Files.newInputStream(bak);
+				 OutputStream raw = Files.newOutputStream(tmp)) {
+				// The backup holds the same secrets as the file, so restrict tmp before writing to it
+				try {
+					Files.setPosixFilePermissions(tmp, Files.getPosixFilePermissions(bak));
+				} catch (UnsupportedOperationException e) {
+					// Not a POSIX file system; the default permissions stand
+				}
+				try (OutputStream out = new GZIPOutputStream(raw)) {
+					in.transferTo(out);
+				}
+			}
+			Files.setLastModifiedTime(tmp, Files.getLastModifiedTime(bak));
+			Files.move(tmp, gz, StandardCopyOption.REPLACE_EXISTING);
+		} finally {
+			Files.deleteIfExists(tmp);
+		}
+		Files.delete(bak);
+	}
+	
+	private static synchronized ExecutorService executor() {
+		if (exec == null) {
+			exec = Executors.newSingleThreadExecutor(r -> {
+				Thread t = new Thread(r, "backup-rotation");
+				t.setDaemon(true);
+				return t;
+			});
+		}
+		return exec;
+	}
+	
+	private static long readLong(Environment env, String name) {
+		String v = env.get(name);
+		if (v == null || v.isEmpty()) {
+			return 0;
+		}
+		try {
+			return Long.parseLong(v.trim());
+		} catch (NumberFormatException e) {
+			System.out.println("BackupRotation: ignoring invalid " + name + "=[" + v + "]");
+			return 0;
+		}
+	}
+	
+	private static final class Backup {
+		
+		final Path file;
+		final LocalDateTime time;
+		final boolean compressed;
+		
+		Backup(Path file, LocalDateTime time, boolean compressed) {
+			this.file       = file;
+			this.time       = time;
+			this.compressed = compressed;
+		}
+		
+	}
+	
+}
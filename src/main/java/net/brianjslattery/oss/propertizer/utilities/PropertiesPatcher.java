@@ -0,0 +1,265 @@
+/**
+ * Copyright © 2021 Brian J Slattery <oss@brnsl.com>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the “Software”), to
+ * deal in the Software without restriction, including without limitation the
+ * rights to use, copy, modify, merge, publish, distribute, sublicense, and/or
+ * sell copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED “AS IS”, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ * 
+ */
+package net.brianjslattery.oss.propertizer.utilities;
+
+import static java.nio.charset.StandardCharsets.ISO_8859_1;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+
+/**
+ * Streams a properties file through, one logical line at a time,
+ * replacing the value of every key being set and passing every other
+ * line (comments, blank lines, continuations, formatting) through as it
+ * was. Keys that never appeared are appended at the end, in the order
+ * given. Only the current line is held, whatever the size of the file.
+ * 
+ * Keys are read as {@link Properties#load(Reader)} reads them, and new
+ * lines are escaped as {@link Properties#store(Writer, String)} writes them.
+ * 
+ * @author Brian J Slattery <oss@brnsl.com>
+ * 
+ */
+public final class PropertiesPatcher {
+	
+	private final Map<String, String> updates;
+	private final Set<String> seen = new HashSet<>();
+	private int replaced;
+	private int appended;
+	
+	/**
+	 * 
+	 * @param updates the keys to set; its iteration order is the order new keys are appended in
+	 */
+	public PropertiesPatcher(Map<String, String> updates) {
+		this.updates = new LinkedHashMap<>(updates);
+	}
+	
+	/**
+	 * Copy {@code in} to {@code out} with the updates applied. A first line
+	 * that matches {@code header} up to its first colon is taken to be an
+	 * earlier header, and replaced rather than kept.
+	 * 
+	 * @param header a comment line written first (without line terminator), or null for none
+	 */
+	public void patch(Reader in, Writer out, String header) throws IOException {
+		
+		String newline = null;
+		boolean first = true;
+		boolean endsWithNewline = true;
+		StringBuilder line = new StringBuilder();
+		
+		if (!in.markSupported()) {
+			in = new BufferedReader(in);
+		}
+		if (header != null) {
+			out.write(header);
+			out.write(System.lineSeparator());
+		}
+		
+		while (readLogicalLine(in, line)) {
+			String text = line.toString();
+			String term = terminator(text);
+			if (newline == null && !term.isEmpty()) {
+				newline = term;
+			}
+			endsWithNewline = !term.isEmpty();
+			
+			if (first && header != null && isSameHeader(header, text)) {
+				first = false;
+				continue;
+			}
+			first = false;
+			
+			String key = parseKey(text);
+			if (key != null && updates.containsKey(key)) {
+				seen.add(key);
+				replaced++;
+				out.write(entry(key, updates.get(key)));
+				out.write(term);
+			} else {
+				out.write(text);
+			}
+		}
+		
+		if (newline == null) {
+			newline = System.lineSeparator();
+		}
+		for (Map.Entry<String, String> e : updates.entrySet()) {
+			if (seen.contains(e.getKey())) {
+				continue;
+			}
+			if (!endsWithNewline) {
+				out.write(newline);
+				endsWithNewline = true;
+			}
+			out.write(entry(e.getKey(), e.getValue()));
+			out.write(newline);
+			appended++;
+		}
+	}
+	
+	public int getReplaced() {
+		return replaced;
+	}
+	
+	public int getAppended() {
+		return appended;
+	}
+	
+	/**
+	 * Read one logical line, with its line terminators: a physical line, plus
+	 * the lines it continues onto with a trailing backslash. Comment lines never continue.
+	 * 
+	 * @return false at end of input
+	 */
+	static boolean readLogicalLine(Reader in, StringBuilder line) throws IOException {
+		line.setLength(0);
+		boolean any = false;
+		int lineStart = 0;
+		int c;
+		while ((c = in.read()) != -1) {
+			any = true;
+			line.append((char) c);
+			if (c == '\r') {
+				// \r\n is one terminator; a lone \r ends the line too
+				in.mark(1);
+				int n = in.read();
+				if (n == '\n') {
+					line.append('\n');
+				} else if (n != -1) {
+					in.reset();
+				}
+			}
+			if (c == '\n' || c == '\r') {
+				if (!continues(line, lineStart)) {
+					return true;
+				}
+				lineStart = line.length();
+			}
+		}
+		return any;
+	}
+	
+	/**
+	 * 
+	 * @return the key of the line, unescaped; or null for a blank or comment line
+	 */
+	static String parseKey(String text) {
+		int i = 0;
+		int len = text.length();
+		while (i < len && isWhitespace(text.charAt(i))) {
+			i++;
+		}
+		if (i == len || text.charAt(i) == '#' || text.charAt(i) == '!' || text.charAt(i) == '\r' || text.charAt(i) == '\n') {
+			return null;
+		}
+		StringBuilder key = new StringBuilder();
+		while (i < len) {
+			char c = text.charAt(i++);
+			if (c == '\\') {
+				if (i == len) {
+					break;
+				}
+				char n = text.charAt(i++);
+				if (n == '\r' || n == '\n') {
+					// Continuation: skip the terminator and the next line's leading whitespace
+					if (n == '\r' && i < len && text.charAt(i) == '\n') {
+						i++;
+					}
+					while (i < len && isWhitespace(text.charAt(i))) {
+						i++;
+					}
+				} else if (n == 'u' && i + 4 <= len) {
+					key.append((char) Integer.parseInt(text.substring(i, i + 4), 16));
+					i += 4;
+				} else {
+					key.append(n == 't' ? '\t' : n == 'n' ? '\n' : n == 'r' ? '\r' : n == 'f' ? '\f' : n);
+				}
+			} else if (c == '=' || c == ':' || isWhitespace(c) || c == '\r' || c == '\n') {
+				break;
+			} else {
+				key.append(c);
+			}
+		}
+		return key.toString();
+	}
+	
+	/**
+	 * 
+	 * @return the line Properties.store would write for the entry, without its terminator
+	 */
+	static String entry(String key, String value) throws IOException {
+		Properties p = new Properties();
+		p.setProperty(key, value);
+		String s = new String(Utilities.render(p), ISO_8859_1);
+		return s.substring(0, s.length() - System.lineSeparator().length());
+	}
+	
+	private static boolean continues(StringBuilder line, int lineStart) {
+		int end = line.length();
+		while (end > lineStart && (line.charAt(end - 1) == '\n' || line.charAt(end - 1) == '\r')) {
+			end--;
+		}
+		int first = lineStart;
+		while (first < end && isWhitespace(line.charAt(first))) {
+			first++;
+		}
+		// A comment line only when it starts the logical line
+		if (lineStart == 0 && first < end && (line.charAt(first) == '#' || line.charAt(first) == '!')) {
+			return false;
+		}
+		int slashes = 0;
+		for (int i = end - 1; i >= first && line.charAt(i) == '\\'; i--) {
+			slashes++;
+		}
+		return slashes % 2 == 1;
+	}
+	
+	private static String terminator(String text) {
+		if (text.endsWith("\r\n")) {
+			return "\r\n";
+		}
+		if (text.endsWith("\n") || text.endsWith("\r")) {
+			return text.substring(text.length() - 1);
+		}
+		return "";
+	}
+	
+	private static boolean isSameHeader(String header, String text) {
+		int colon = header.indexOf(':');
+		return text.startsWith(colon > 0 ? header.substring(0, colon + 1) : header);
+	}
+	
+	private static boolean isWhitespace(char c) {
+		return c == ' ' || c == '\t' || c == '\f';
+	}
+	
+}
@@ -22,17 +22,39 @@
  */
 package net.brianjslattery.oss.propertizer.utilities;
 
+import static java.nio.charset.StandardCharsets.ISO_8859_1;
 import static java.time.format.DateTimeFormatter.ISO_LOCAL_DATE_TIME;
 
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.BufferedWriter;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.StringReader;
+import java.io.Writer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
 import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.time.LocalDateTime;
+import java.util.AbstractMap.SimpleImmutableEntry;
+import java.util.Arrays;
+import java.util.LinkedHashSet;
+import java.util.Map;
 import java.util.Properties;
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.TreeMap;
 
 /**
  * 
@@ -74,10 +96,20 @@ public class Utilities {
 		return p;
 	}
 	
+	/**
+	 * Back up the file as a hard link, or a copy where links are not
+	 * supported. The file itself stays in place.
+	 */
 	public static void createBackupFile(Path path) throws IOException {
 		if (Files.exists(path)) {
-			Files.move(path, getBackupFilePath(path));
+			Path backup = getBackupFilePath(path);
+			try {
+				Files.createLink(backup, path);
+			} catch (UnsupportedOperationException | IOException e) {
+				Files.copy(path, backup, StandardCopyOption.COPY_ATTRIBUTES);
+			}
 			System.out.println("Created a backup of (" + path + ")");
+			BackupRotation.schedule(path);
 		} else {
 			System.out.println("No backup created - no previous file. (" + path + ")");
 		}
@@ -89,21 +121,165 @@ public class Utilities {
 		return Paths.get(path.toString() + "-" + dtString + ".bak");
 	}
 	
-	public static void saveProperties(Properties p, Path path) throws IOException {
+	/**
+	 * Stream {@code src} to {@code dst}, setting only the keys in {@code updates}:
+	 * every other line, comment and blank line is kept as it was, and keys not
+	 * in {@code src} are appended. A missing {@code src} is treated as empty.
+	 * When {@code dst} already holds exactly this output, header aside, it is
+	 * left alone: no backup, no write, and its modified time is unchanged.
+	 * A changed {@code dst} is backed up and replaced atomically.
+	 * {@code src} and {@code dst} may be the same file.
+	 * 
+	 * @return true when the file was written; false when it was unchanged
+	 * @throws IOException
+	 */
+	public static boolean patchProperties(Path src, Map<String, String> updates, Path dst) throws IOException {
 		
-		Utilities.createBackupFile(path);		
-
-		Files.createFile(path);
-
-		String comments = buildComments();
+		PropertiesPatcher patcher = new PropertiesPatcher(updates);
+		String header = "#" + buildComments();
+		boolean hasSrc = Files.isRegularFile(src);
+		if (!hasSrc) {
+			System.out.println(String.format(RETURN_EMPTY_PROPS, src.toAbsolutePath()));
+		}
 		
-		try (OutputStream os = Files.newOutputStream(path, StandardOpenOption.WRITE)) {
-			p.store(os, comments);
-			System.out.println("Stored output properties successfully at: " + path);
+		Path tmp = writeSibling(dst, os -> {
+			Writer w = new BufferedWriter(new OutputStreamWriter(os, ISO_8859_1));
+			try (Reader r = hasSrc ? Files.newBufferedReader(src, ISO_8859_1) : new StringReader("")) {
+				patcher.patch(r, w, header);
+			}
+			w.flush();
+		});
+		try {
+			System.out.println("Patched (" + src + ") to (" + dst + "): replaced=[" + patcher.getReplaced()
+					+ "], appended=[" + patcher.getAppended() + "].");
+			if (Files.isRegularFile(dst) && Arrays.equals(fingerprintAfterHeader(tmp), fingerprintAfterHeader(dst))) {
+				System.out.println("Output properties unchanged at: " + dst + " (not written)");
+				return false;
+			}
+			createBackupFile(dst);
+			replace(tmp, dst);
+		} finally {
+			Files.deleteIfExists(tmp);
+		}
+		System.out.println("Stored output properties successfully at: " + dst);
+		return true;
+	}
+	
+	/**
+	 * 
+	 * @return SHA-256 of the file after its first line, when that is a header comment
+	 */
+	private static byte[] fingerprintAfterHeader(Path file) throws IOException {
+		MessageDigest md;
+		try {
+			md = MessageDigest.getInstance("SHA-256");
+		} catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException(e);
+		}
+		try (InputStream in = new BufferedInputStream(Files.newInputStream(file))) {
+			in.mark(1);
+			if (in.read() == '#') {
+				int c;
+				while ((c = in.read()) != -1 && c != '\n') {
+					// skip the header
+				}
+			} else {
+				in.reset();
+			}
+			byte[] buf = new byte[8192];
+			for (int n; (n = in.read(buf)) > 0; ) {
+				md.update(buf, 0, n);
+			}
+		}
+		return md.digest();
+	}
+	
+	/**
+	 * Write a temp file next to {@code path} and sync it to disk. It takes the
+	 * permissions of the file it will replace, if there is one.
+	 */
+	private static Path writeSibling(Path path, Body body) throws IOException {
+		Path dir = path.toAbsolutePath().getParent();
+		Path tmp = dir.resolve("." + path.getFileName() + "." + System.nanoTime() + ".tmp");
+		try (FileChannel ch = FileChannel.open(tmp, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE)) {
+			OutputStream os = new BufferedOutputStream(Channels.newOutputStream(ch));
+			body.writeTo(os);
+			os.flush();
+			ch.force(true);
+		} catch (IOException e) {
+			Files.deleteIfExists(tmp);
+			throw e;
+		}
+		if (Files.exists(path)) {
+			try {
+				Files.setPosixFilePermissions(tmp, Files.getPosixFilePermissions(path));
+			} catch (UnsupportedOperationException e) {
+				// Not a POSIX file system; the default permissions stand
+			}
 		}
+		return tmp;
+	}
+	
+	/**
+	 * Swap {@code tmp} in for {@code path} in one rename, so readers see the
+	 * old file or the new one and never neither.
+	 */
+	private static void replace(Path tmp, Path path) throws IOException {
+		try {
+			Files.move(tmp, path, StandardCopyOption.ATOMIC_MOVE);
+		} catch (AtomicMoveNotSupportedException e) {
+			System.out.println("Atomic move not supported at (" + path + "), replacing instead.");
+			Files.move(tmp, path, StandardCopyOption.REPLACE_EXISTING);
+		}
+		// Make the rename itself durable; not every platform can sync a directory
+		try (FileChannel dir = FileChannel.open(path.toAbsolutePath().getParent(), StandardOpenOption.READ)) {
+			dir.force(true);
+		} catch (IOException e) {
+			// best effort
+		}
+	}
+	
+	/**
+	 * 
+	 * @return the entries as {@link Properties#store(OutputStream, String)} writes them, sorted by key, without its date comment
+	 */
+	static byte[] render(Properties p) throws IOException {
 		
+		SortedMap<String, Object> sorted = new TreeMap<>();
+		p.forEach((k, v) -> sorted.put(String.valueOf(k), v));
+		
+		Properties ordered = new Properties() {
+			private static final long serialVersionUID = 1L;
+			@Override
+			public Set<Map.Entry<Object, Object>> entrySet() {
+				Set<Map.Entry<Object, Object>> entries = new LinkedHashSet<>();
+				sorted.forEach((k, v) -> entries.add(new SimpleImmutableEntry<>(k, v)));
+				return entries;
+			}
+		};
+		ordered.putAll(sorted);
+		
+		ByteArrayOutputStream bos = new ByteArrayOutputStream();
+		ordered.store(bos, null);
+		return stripComments(bos.toByteArray());
 	}
 	
+	/**
+	 * 
+	 * @return the bytes after any leading comment lines
+	 */
+	private static byte[] stripComments(byte[] b) {
+		int start = 0;
+		while (start < b.length && (b[start] == '#' || b[start] == '!')) {
+			while (start < b.length && b[start] != '\n') {
+				start++;
+			}
+			start++;
+		}
+		return Arrays.copyOfRange(b, Math.min(start, b.length), b.length);
+	}
+	
+	
 	public static String dropPrefixIfPrefixed(String k) {
 		if (isIiq(k) || isTrg(k)) return dropPrefix(k);
 		return k;
@@ -130,6 +306,11 @@ public class Utilities {
 		return k.substring(0, end);
 	}
 	
+	@FunctionalInterface
+	private interface Body {
+		void writeTo(OutputStream os) throws IOException;
+	}
+	
 	private static String buildComments() {
 		return new StringBuilder()
 				.append("Built On: ")
@@ -23,6 +23,8 @@
 package net.brianjslattery.oss.propertizer;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
 
 import java.nio.file.Path;
 
@@ -73,4 +75,10 @@ public class CliUtilsTest {
 		assertEquals(TARG_OUT_PATH, opts.getTargetOutputPath().toString());
 	}
 	
+	@Test
+	public void testImportForce() {
+		assertFalse(CliUtils.handleArgs(new String[] { "-import", "a.xml" }).isImportForce());
+		assertTrue(CliUtils.handleArgs(new String[] { "-import", "a.xml", "-importForce" }).isImportForce());
+	}
+	
 }
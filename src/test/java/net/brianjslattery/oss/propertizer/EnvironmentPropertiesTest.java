@@ -24,6 +24,7 @@
 package net.brianjslattery.oss.propertizer;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 
 import java.util.Collections;
@@ -187,6 +188,25 @@ public class EnvironmentPropertiesTest {
 
 	}
 	
+	@Test
+	public void testHasKmsProperties() {
+		
+		Map<String, String> m = new HashMap<>();
+		m.put(IIQ_PROP_A, IIQ_PROP_A_VAL);
+		m.put(TRG_PROP_B, TRG_PROP_B_VAL);
+		
+		assertFalse("Plain only", getProps(m).hasKmsProperties());
+		assertFalse("Plain only (names)", EnvironmentProperties.hasKmsVariables(environment(m)));
+		
+		m.put("OTHER_KMS", "$value$");
+		assertFalse("Not IIQ or Target", EnvironmentProperties.hasKmsVariables(environment(m)));
+		
+		m.put(TRG_PROP_A, TRG_PROP_A_VAL);
+		assertTrue("With KMS", getProps(m).hasKmsProperties());
+		assertTrue("With KMS (names)", EnvironmentProperties.hasKmsVariables(environment(m)));
+		
+	}
+	
 	public void baseTestIiqDoubleUnderscoreChangesToPeriod(String expectKey, String envVar) {
 		
 		String v = "the-value!";
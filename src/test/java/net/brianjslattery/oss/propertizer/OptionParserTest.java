@@ -26,6 +26,13 @@ import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import net.brianjslattery.oss.propertizer.kms.DecryptionService;
+
 import org.junit.Before;
 import org.junit.Test;
 
@@ -93,4 +100,28 @@ public class OptionParserTest {
 		assertTrue(so.isKms());
 	}
 	
+	@Test
+	public void testParseAllDecryptsInOneBatch() {
+		AtomicInteger batches = new AtomicInteger();
+		DecryptionService svc = new DecryptionService() {
+			@Override
+			public String decrypt(String ciphertext) {
+				return ciphertext + " [plain]";
+			}
+			@Override
+			public Map<String, String> decryptAll(Map<String, String> src) {
+				batches.incrementAndGet();
+				return DecryptionService.super.decryptAll(src);
+			}
+		};
+		
+		List<SplitOption> out = new OptionParser(svc).parseAll(Arrays.asList("KMS::one", "plain", "KMS::two"));
+		
+		assertEquals(1, batches.get());
+		assertEquals("one [plain]", out.get(0).getVal());
+		assertEquals("plain", out.get(1).getVal());
+		assertEquals("two [plain]", out.get(2).getVal());
+		assertTrue(out.get(2).isKms());
+	}
+	
 }
@@ -22,13 +22,28 @@
  */
 package net.brianjslattery.oss.propertizer;
 
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
 import java.lang.reflect.Constructor;
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Modifier;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
 
+import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import net.brianjslattery.oss.propertizer.utilities.Environment;
 
 /**
  * 
@@ -36,6 +51,12 @@ import org.junit.Test;
  * 
  */
 public class PropertizerTest {
+	
+	@Rule
+	public TemporaryFolder tmp = new TemporaryFolder();
+	
+	private static final String IIQ_REPORT  = "==iiq.properties report==";
+	private static final String TARG_REPORT = "==target.properties report==";
 
 	@Test
 	public void testPrivateConstructor() throws NoSuchMethodException, SecurityException, InstantiationException, IllegalAccessException, IllegalArgumentException, InvocationTargetException {
@@ -45,4 +66,97 @@ public class PropertizerTest {
 	    c.newInstance();
 	}
 	
+	@Test
+	public void testReportsPrintInFileOrder() throws IOException {
+		Path dir = tmp.getRoot().toPath();
+		
+		String out = handle(dir, "iiq.properties", "target.properties");
+		
+		assertEquals("iiq.value=1\n",    body(dir.resolve("iiq.properties")));
+		assertEquals("targ.value=%%2%%\n", body(dir.resolve("target.properties")));
+		assertTrue(out, out.indexOf(IIQ_REPORT) >= 0);
+		assertTrue(out, out.indexOf(IIQ_REPORT) < out.indexOf(TARG_REPORT));
+	}
+	
+	@Test
+	public void testFailureInOneFileFailsTheRun() throws IOException {
+		Path dir = tmp.getRoot().toPath();
+		Files.createFile(dir.resolve("blocker"));
+		
+		try {
+			handle(dir, "blocker/iiq.properties", "target.properties");
+			fail("Should fail when iiq.properties cannot be written.");
+		} catch (IOException e) {
+			assertTrue(e.getMessage(), e.getMessage().contains("blocker"));
+			assertEquals(0, e.getSuppressed().length);
+		}
+		
+		// The other file is still written
+		assertEquals("targ.value=%%2%%\n", body(dir.resolve("target.properties")));
+	}
+	
+	@Test
+	public void testSecondFailureIsSuppressed() throws IOException {
+		Path dir = tmp.getRoot().toPath();
+		Files.createFile(dir.resolve("iiq-blocker"));
+		Files.createFile(dir.resolve("targ-blocker"));
+		
+		try {
+			handle(dir, "iiq-blocker/iiq.properties", "targ-blocker/target.properties");
+			fail("Should fail when neither file can be written.");
+		} catch (IOException e) {
+			assertTrue(e.getMessage(), e.getMessage().contains("iiq-blocker"));
+			assertEquals(1, e.getSuppressed().length);
+			assertTrue(e.getSuppressed()[0].getMessage(), e.getSuppressed()[0].getMessage().contains("targ-blocker"));
+		}
+	}
+	
+	/**
+	 * Render one plain value into each file, from missing templates.
+	 * 
+	 * @return what was printed
+	 */
+	private static String handle(Path dir, String iiqOut, String targOut) throws IOException {
+		Map<String, String> m = new HashMap<>();
+		m.put("user.dir",      dir.toString());
+		m.put("IIQ_iiq__value", "1");
+		m.put("TRG_targ__value", "2");
+		EnvironmentProperties eProps = EnvironmentProperties.create(environment(m));
+		
+		PropertizerOptions opts = new PropertizerOptions(Paths.get("iiq-template.properties"), Paths.get("target-template.properties"),
+				Paths.get(iiqOut), Paths.get(targOut), null, null, null);
+		
+		PrintStream original = System.out;
+		ByteArrayOutputStream bos = new ByteArrayOutputStream();
+		System.setOut(new PrintStream(bos, true));
+		try {
+			Propertizer.handleProperties(opts, eProps);
+		} finally {
+			System.setOut(original);
+		}
+		return bos.toString();
+	}
+	
+	/**
+	 * 
+	 * @return the file without its header comment
+	 */
+	private static String body(Path file) throws IOException {
+		String s = Files.readString(file).replace(System.lineSeparator(), "\n");
+		return s.substring(s.indexOf('\n') + 1);
+	}
+	
+	private static Environment environment(Map<String, String> m) {
+		return new Environment() {
+			@Override
+			public String get(String key) {
+				return m.get(key);
+			}
+			@Override
+			public Map<String, String> get() {
+				return Collections.unmodifiableMap(m);
+			}
+		};
+	}
+	
 }
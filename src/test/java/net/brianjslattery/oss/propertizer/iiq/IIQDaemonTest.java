@@ -0,0 +1,99 @@
+/**
+ * Copyright © 2021 Brian J Slattery <oss@brnsl.com>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the “Software”), to
+ * deal in the Software without restriction, including without limitation the
+ * rights to use, copy, modify, merge, publish, distribute, sublicense, and/or
+ * sell copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED “AS IS”, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ * 
+ */
+package net.brianjslattery.oss.propertizer.iiq;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+
+import org.junit.Test;
+
+/**
+ * 
+ * @author Brian J Slattery <oss@brnsl.com>
+ * 
+ */
+public class IIQDaemonTest {
+	
+	@Test
+	public void testClientFallsBackWhenNoDaemon() throws IOException {
+		int port;
+		// Find a free port, then leave it closed
+		try (ServerSocket s = new ServerSocket(0)) {
+			port = s.getLocalPort();
+		}
+		
+		IIQDaemonClient client = new IIQDaemonClient(port, "token");
+		assertFalse(client.runCommand(line -> { }, "encrypt", "x"));
+		assertFalse(client.isAvailable());
+	}
+	
+	@Test
+	public void testWrongTokenIsRejected() throws IOException {
+		try (IIQDaemon daemon = new IIQDaemon(0, "right")) {
+			Thread t = new Thread(daemon::serve);
+			t.setDaemon(true);
+			t.start();
+			
+			IIQDaemonClient client = new IIQDaemonClient(daemon.getPort(), "wrong");
+			try {
+				client.runCommand(line -> { }, "encrypt", "x");
+				fail("Should reject a wrong token.");
+			} catch (IllegalStateException e) {
+				assertTrue(e.getMessage(), e.getMessage().contains("Invalid token"));
+			}
+			assertTrue(client.isAvailable());
+		}
+	}
+	
+	@Test
+	public void testIncompleteRequestTimesOut() throws IOException {
+		try (IIQDaemon daemon = new IIQDaemon(0, "right", 200)) {
+			Thread t = new Thread(daemon::serve);
+			t.setDaemon(true);
+			t.start();
+			
+			try (Socket s = new Socket(InetAddress.getLoopbackAddress(), daemon.getPort())) {
+				s.setSoTimeout(5_000);
+				// The token, but never the argument count
+				OutputStream out = s.getOutputStream();
+				out.write("right\n".getBytes(UTF_8));
+				out.flush();
+				
+				BufferedReader in = new BufferedReader(new InputStreamReader(s.getInputStream(), UTF_8));
+				assertNull("Daemon should close the connection", in.readLine());
+			}
+		}
+	}
+	
+}
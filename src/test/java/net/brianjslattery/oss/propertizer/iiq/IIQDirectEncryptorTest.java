@@ -0,0 +1,114 @@
+/**
+ * Copyright © 2021 Brian J Slattery <oss@brnsl.com>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the “Software”), to
+ * deal in the Software without restriction, including without limitation the
+ * rights to use, copy, modify, merge, publish, distribute, sublicense, and/or
+ * sell copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED “AS IS”, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ * 
+ */
+package net.brianjslattery.oss.propertizer.iiq;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.Test;
+
+import net.brianjslattery.oss.propertizer.utilities.Environment;
+
+/**
+ * 
+ * @author Brian J Slattery <oss@brnsl.com>
+ * 
+ */
+public class IIQDirectEncryptorTest {
+	
+	private static final String FAKE = FakeIiq.class.getName();
+	
+	@Test
+	public void testUnsetIsNull() {
+		assertNull(IIQDirectEncryptor.from(environment(null)));
+	}
+	
+	@Test
+	public void testEncrypt() {
+		IIQDirectEncryptor enc = IIQDirectEncryptor.from(environment(FAKE + "#encrypt"));
+		assertEquals("1:terces", enc.encrypt("secret"));
+	}
+	
+	@Test
+	public void testRejectsOutputNotInIiqFormat() {
+		IIQDirectEncryptor enc = IIQDirectEncryptor.from(environment(FAKE + "#noise"));
+		try {
+			enc.encrypt("secret");
+			fail("Should reject output iiq encrypt would not produce.");
+		} catch (IllegalStateException e) {
+			assertTrue(e.getMessage().contains("keyId:ciphertext"));
+		}
+	}
+	
+	@Test
+	public void testIiqFormat() {
+		assertTrue(IIQDirectEncryptor.isIiqFormat("1:aBc+/="));
+		assertFalse(IIQDirectEncryptor.isIiqFormat("aBc+/="));
+		assertFalse(IIQDirectEncryptor.isIiqFormat("1:a b"));
+	}
+	
+	@Test(expected = IllegalArgumentException.class)
+	public void testMalformedApi() {
+		IIQDirectEncryptor.from(environment(FAKE));
+	}
+	
+	@Test(expected = IllegalArgumentException.class)
+	public void testMissingMethod() {
+		IIQDirectEncryptor.from(environment(FAKE + "#nope"));
+	}
+	
+	public static class FakeIiq {
+		
+		public static String encrypt(String in) {
+			return "1:" + new StringBuilder(in).reverse();
+		}
+		
+		public static String noise(String in) {
+			return "WARN log4j not configured\n" + encrypt(in);
+		}
+		
+	}
+	
+	private Environment environment(String api) {
+		Map<String, String> m = new HashMap<>();
+		if (api != null) m.put(IIQDirectEncryptor.API_VAR, api);
+		return new Environment() {
+			@Override
+			public String get(String key) {
+				return m.get(key);
+			}
+			@Override
+			public Map<String, String> get() {
+				return Collections.unmodifiableMap(m);
+			}
+		};
+	}
+	
+}
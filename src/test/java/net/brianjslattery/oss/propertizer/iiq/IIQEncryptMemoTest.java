@@ -0,0 +1,75 @@
+/**
+ * Copyright © 2021 Brian J Slattery <oss@brnsl.com>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the “Software”), to
+ * deal in the Software without restriction, including without limitation the
+ * rights to use, copy, modify, merge, publish, distribute, sublicense, and/or
+ * sell copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED “AS IS”, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ * 
+ */
+package net.brianjslattery.oss.propertizer.iiq;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+/**
+ * 
+ * @author Brian J Slattery <oss@brnsl.com>
+ * 
+ */
+public class IIQEncryptMemoTest {
+	
+	@Test
+	public void testRepeatIsAvoided() {
+		IIQEncryptMemo memo = new IIQEncryptMemo();
+		
+		assertNull(memo.get("shared-password"));
+		memo.put("shared-password", "1:abc");
+		assertEquals("1:abc", memo.get("shared-password"));
+		assertEquals("1:abc", memo.get("shared-password"));
+		
+		assertEquals(3, memo.getRequested());
+		assertEquals(1, memo.getEncrypted());
+		assertEquals(2, memo.getAvoided());
+	}
+	
+	@Test
+	public void testReport() {
+		IIQEncryptMemo memo = new IIQEncryptMemo();
+		StringBuilder rpt = new StringBuilder();
+		memo.report(rpt);
+		assertEquals("", rpt.toString());
+		
+		memo.get("a");
+		memo.put("a", "1:a");
+		memo.get("a");
+		memo.report(rpt);
+		assertTrue(rpt.toString(), rpt.toString().contains("values=[2], encrypted=[1], avoided=[1]"));
+	}
+	
+	@Test
+	public void testWipe() {
+		IIQEncryptMemo memo = new IIQEncryptMemo();
+		memo.put("a", "1:a");
+		memo.wipe();
+		assertNull(memo.get("a"));
+		assertEquals(0, memo.getEncrypted());
+	}
+	
+}
@@ -22,11 +22,17 @@
  */
 package net.brianjslattery.oss.propertizer.iiq;
 
+import static java.util.Arrays.asList;
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertTrue;
 
 import java.lang.reflect.Constructor;
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.Function;
 
 import org.junit.Test;
 
@@ -47,4 +53,40 @@ public class IIQEncryptorTest {
 	    c.newInstance();
 	}
 	
+	@Test
+	public void testEncryptAllEmptySkipsIiq() {
+		assertTrue(IIQEncryptor.encryptAll(Collections.emptyMap()).isEmpty());
+	}
+	
+	@Test
+	public void testOnlyFirstArgumentEncryptedCostsOneCallPerValue() {
+		List<String> calls = new ArrayList<>();
+		Function<String, String> one = p -> {
+			calls.add(p);
+			return "1:" + p;
+		};
+		try {
+			List<String> out = IIQEncryptor.completeSlice(asList("a", "b", "c"), asList("1:a"), one);
+			assertEquals(asList("1:a", "1:b", "1:c"), out);
+			assertEquals(asList("b", "c"), calls);
+		} finally {
+			IIQEncryptor.shutdown();
+		}
+	}
+	
+	@Test
+	public void testUnmatchedOutputEncryptsEachValue() {
+		List<String> calls = new ArrayList<>();
+		try {
+			List<String> out = IIQEncryptor.completeSlice(asList("a", "b", "c"), asList("1:a", "1:b"), p -> {
+				calls.add(p);
+				return "2:" + p;
+			});
+			assertEquals(asList("2:a", "2:b", "2:c"), out);
+			assertEquals(asList("a", "b", "c"), calls);
+		} finally {
+			IIQEncryptor.shutdown();
+		}
+	}
+	
 }
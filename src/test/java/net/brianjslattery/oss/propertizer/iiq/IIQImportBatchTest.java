@@ -0,0 +1,138 @@
+/**
+ * Copyright © 2021 Brian J Slattery <oss@brnsl.com>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the “Software”), to
+ * deal in the Software without restriction, including without limitation the
+ * rights to use, copy, modify, merge, publish, distribute, sublicense, and/or
+ * sell copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED “AS IS”, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ * 
+ */
+package net.brianjslattery.oss.propertizer.iiq;
+
+import static net.brianjslattery.oss.propertizer.iiq.IIQImportBatch.MARKER;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+
+import net.brianjslattery.oss.propertizer.iiq.IIQImportBatch.Status;
+
+/**
+ * 
+ * @author Brian J Slattery <oss@brnsl.com>
+ * 
+ */
+public class IIQImportBatchTest {
+	
+	private static final List<Path> FILES = Arrays.asList(Paths.get("/x/a.xml"), Paths.get("/x/my b.xml"), Paths.get("/x/c.xml"));
+	
+	@Test
+	public void testScript() {
+		String script = new IIQImportBatch(FILES, l -> {}).script();
+		String[] lines = script.split("\n");
+		assertEquals(9, lines.length);
+		assertEquals("echo " + MARKER + " begin 0", lines[0]);
+		assertEquals("import /x/a.xml",             lines[1]);
+		assertEquals("echo " + MARKER + " end 0",   lines[2]);
+		assertEquals("import \"/x/my b.xml\"",      lines[4]);
+	}
+	
+	@Test
+	public void testAllImported() {
+		List<String> out = new ArrayList<>();
+		IIQImportBatch batch = new IIQImportBatch(FILES, out::add);
+		for (int i = 0; i < FILES.size(); i++) {
+			batch.accept(MARKER + " begin " + i);
+			batch.accept("Rule: imported " + i);
+			batch.accept(MARKER + " end " + i);
+		}
+		batch.finish();
+		
+		assertTrue(batch.hasMarkers());
+		assertTrue(batch.isSuccess());
+		// Markers are not passed on
+		assertEquals("[Rule: imported 0, Rule: imported 1, Rule: imported 2]", out.toString());
+		
+		StringBuilder rpt = new StringBuilder();
+		batch.report(rpt);
+		assertTrue(rpt.toString(), rpt.toString().startsWith("IIQ import: file=[/x/a.xml], status=[OK], millis=["));
+	}
+	
+	@Test
+	public void testErrorAndUnfinished() {
+		IIQImportBatch batch = new IIQImportBatch(FILES, l -> {});
+		batch.accept(MARKER + " begin 0");
+		batch.accept("sailpoint.tools.GeneralException: Unable to parse");
+		batch.accept(MARKER + " end 0");
+		batch.accept(MARKER + " begin 1");
+		batch.finish();
+		
+		assertFalse(batch.isSuccess());
+		assertEquals(Status.FAILED,  batch.getStatus(0));
+		assertEquals(Status.FAILED,  batch.getStatus(1));
+		assertEquals(Status.PENDING, batch.getStatus(2));
+		
+		StringBuilder rpt = new StringBuilder();
+		batch.report(rpt);
+		assertTrue(rpt.toString(), rpt.toString().endsWith("IIQ import: file=[/x/c.xml], status=[PENDING].\n"));
+	}
+	
+	@Test
+	public void testNoMarkers() {
+		IIQImportBatch batch = new IIQImportBatch(FILES, l -> {});
+		batch.accept("Unknown command: source");
+		batch.finish();
+		assertFalse(batch.hasMarkers());
+		assertFalse(batch.isSuccess());
+		// Unknown is not a failure
+		assertFalse(batch.hasFailures());
+		assertEquals(Status.UNKNOWN, batch.getStatus(0));
+	}
+	
+	@Test
+	public void testNoMarkersWithError() {
+		IIQImportBatch batch = new IIQImportBatch(FILES, l -> {});
+		batch.accept("sailpoint.tools.GeneralException: Unable to parse");
+		batch.finish();
+		assertTrue(batch.hasFailures());
+		assertEquals(Status.FAILED, batch.getStatus(2));
+	}
+	
+	@Test
+	public void testErrorLine() {
+		assertTrue(IIQImportBatch.isErrorLine("sailpoint.tools.GeneralException: Unable to parse"));
+		assertTrue(IIQImportBatch.isErrorLine("java.lang.OutOfMemoryError"));
+		assertTrue(IIQImportBatch.isErrorLine("ERROR: no such file"));
+		// Imported objects and recovered, logged exceptions are not errors
+		assertFalse(IIQImportBatch.isErrorLine("Rule: ExceptionHandlerRule"));
+		assertFalse(IIQImportBatch.isErrorLine("2021-03-01 10:00:00 WARN  Retrying after ConnectException"));
+		assertFalse(IIQImportBatch.isErrorLine("\tat sailpoint.api.Foo.bar(Foo.java:12)"));
+	}
+	
+	@Test
+	public void testQuote() {
+		assertEquals("/tmp/import.txt", IIQImportBatch.quote("/tmp/import.txt"));
+		assertEquals("\"/tmp/my imports/import.txt\"", IIQImportBatch.quote("/tmp/my imports/import.txt"));
+	}
+	
+}
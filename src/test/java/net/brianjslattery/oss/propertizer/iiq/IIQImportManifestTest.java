@@ -0,0 +1,82 @@
+/**
+ * Copyright © 2021 Brian J Slattery <oss@brnsl.com>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the “Software”), to
+ * deal in the Software without restriction, including without limitation the
+ * rights to use, copy, modify, merge, publish, distribute, sublicense, and/or
+ * sell copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED “AS IS”, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ * 
+ */
+package net.brianjslattery.oss.propertizer.iiq;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import org.junit.Test;
+
+/**
+ * 
+ * @author Brian J Slattery <oss@brnsl.com>
+ * 
+ */
+public class IIQImportManifestTest {
+	
+	private static final String DB_A = "jdbc:mysql://db-a/identityiq";
+	private static final String DB_B = "jdbc:mysql://db-b/identityiq";
+	
+	@Test
+	public void testAppliedPerDatabaseAndContent() throws IOException {
+		Path dir = Files.createTempDirectory("manifest");
+		Path path = dir.resolve("imports.properties");
+		Path xml = Files.writeString(dir.resolve("rules.xml"), "<sailpoint/>");
+		
+		IIQImportManifest first = new IIQImportManifest(path, DB_A);
+		assertFalse(first.isApplied(xml));
+		first.record(xml);
+		first.save();
+		
+		assertTrue(new IIQImportManifest(path, DB_A).isApplied(xml));
+		assertFalse(new IIQImportManifest(path, DB_B).isApplied(xml));
+		
+		Files.writeString(xml, "<sailpoint><Rule name=\"r\"/></sailpoint>");
+		assertFalse(new IIQImportManifest(path, DB_A).isApplied(xml));
+	}
+	
+	@Test
+	public void testUrlIsNotStored() throws IOException {
+		Path dir = Files.createTempDirectory("manifest");
+		Path path = dir.resolve("imports.properties");
+		Path xml = Files.writeString(dir.resolve("rules.xml"), "<sailpoint/>");
+		
+		IIQImportManifest m = new IIQImportManifest(path, "jdbc:mysql://db/iiq?password=secret");
+		m.record(xml);
+		m.save();
+		
+		assertFalse(Files.readString(path).contains("secret"));
+	}
+	
+	@Test
+	public void testNothingRecordedIsNotSaved() throws IOException {
+		Path path = Files.createTempDirectory("manifest").resolve("imports.properties");
+		new IIQImportManifest(path, DB_A).save();
+		assertTrue(Files.notExists(path));
+	}
+	
+}
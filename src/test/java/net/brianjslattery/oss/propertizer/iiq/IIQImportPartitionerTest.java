@@ -0,0 +1,165 @@
+/**
+ * Copyright © 2021 Brian J Slattery <oss@brnsl.com>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the “Software”), to
+ * deal in the Software without restriction, including without limitation the
+ * rights to use, copy, modify, merge, publish, distribute, sublicense, and/or
+ * sell copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED “AS IS”, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ * 
+ */
+package net.brianjslattery.oss.propertizer.iiq;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import javax.xml.stream.XMLStreamException;
+
+import org.junit.Test;
+
+import net.brianjslattery.oss.propertizer.iiq.IIQImportPartitioner.Partition;
+import net.brianjslattery.oss.propertizer.iiq.IIQImportPartitioner.Status;
+
+/**
+ * 
+ * @author Brian J Slattery <oss@brnsl.com>
+ * 
+ */
+public class IIQImportPartitionerTest {
+	
+	private static final String DOCTYPE = "<!DOCTYPE sailpoint PUBLIC \"sailpoint.dtd\" \"sailpoint.dtd\">";
+	
+	@Test
+	public void testPartitionsByTypeInDependencyOrder() throws IOException, XMLStreamException {
+		Path dir = Files.createTempDirectory("partitions");
+		Path xml = write(dir, "<?xml version='1.0' encoding='UTF-8'?>\n" + DOCTYPE + "\n<sailpoint>\n"
+				+ "<Application name=\"HR\"><CorrelationRule><Reference class=\"sailpoint.object.Rule\" name=\"Correlate\"/></CorrelationRule></Application>\n"
+				+ "<!-- rules -->\n"
+				+ "<Rule name=\"Correlate\"><Source><![CDATA[return a < b && c;]]></Source></Rule>\n"
+				+ "<TaskDefinition name=\"Aggregate\"><Reference class=\"sailpoint.object.Rule\" name=\"NotInThisFile\"/></TaskDefinition>\n"
+				+ "<Rule name=\"Other\"><Source>x &amp; y</Source></Rule>\n"
+				+ "</sailpoint>\n");
+		
+		List<Partition> parts = IIQImportPartitioner.partition(xml, dir);
+		
+		assertEquals(3, parts.size());
+		assertEquals("Rule",           parts.get(0).type);
+		assertEquals("Application",    parts.get(1).type);
+		assertEquals("TaskDefinition", parts.get(2).type);
+		assertEquals(2, parts.get(0).objects);
+		assertEquals("[Rule]", parts.get(1).dependsOn.toString());
+		// References to objects outside the bundle do not order anything
+		assertTrue(parts.get(2).dependsOn.isEmpty());
+		
+		String rules = Files.readString(parts.get(0).file);
+		assertTrue(rules, rules.contains(DOCTYPE));
+		assertTrue(rules, rules.contains("<![CDATA[return a < b && c;]]>"));
+		assertTrue(rules, rules.contains("x &amp; y"));
+		assertTrue(rules, rules.trim().endsWith("</Rule>\n</sailpoint>"));
+		
+		// Every partition is a bundle the partitioner can read back
+		for (Partition p : parts) {
+			assertTrue(IIQImportPartitioner.partition(p.file, Files.createTempDirectory("again")).isEmpty());
+		}
+		
+		IIQImportPartitioner.delete(dir);
+		assertTrue(Files.notExists(dir));
+	}
+	
+	@Test
+	public void testReferenceByIdOrderingTheImport() throws IOException, XMLStreamException {
+		Path dir = Files.createTempDirectory("partitions");
+		Path xml = write(dir, "<sailpoint>"
+				+ "<Application name=\"HR\"><Owner><Reference class=\"sailpoint.object.Identity\" id=\"42\"/></Owner></Application>"
+				+ "<Identity id=\"42\" name=\"boss\"/>"
+				+ "</sailpoint>");
+		
+		List<Partition> parts = IIQImportPartitioner.partition(xml, dir);
+		
+		assertEquals("Identity",    parts.get(0).type);
+		assertEquals("Application", parts.get(1).type);
+		assertEquals("[Identity]", parts.get(1).dependsOn.toString());
+		IIQImportPartitioner.delete(dir);
+	}
+	
+	@Test
+	public void testNameInAttributeValueOrdersTheImport() throws IOException, XMLStreamException {
+		Path dir = Files.createTempDirectory("partitions");
+		Path xml = write(dir, "<sailpoint>"
+				+ "<Application name=\"HR\"><Attributes><Map><entry key=\"buildMapRule\" value=\"Build Map\"/></Map></Attributes></Application>"
+				+ "<Rule name=\"Build Map\"/>"
+				+ "<TaskDefinition name=\"Aggregate\"><Attributes><Map><entry key=\"rule\" value=\"Elsewhere\"/></Map></Attributes></TaskDefinition>"
+				+ "</sailpoint>");
+		
+		List<Partition> parts = IIQImportPartitioner.partition(xml, dir);
+		
+		assertEquals("Rule",        parts.get(0).type);
+		assertEquals("Application", parts.get(1).type);
+		assertEquals("[Rule]", parts.get(1).dependsOn.toString());
+		assertTrue(parts.get(2).dependsOn.isEmpty());
+		IIQImportPartitioner.delete(dir);
+	}
+	
+	@Test
+	public void testImportActionIsImportedWhole() throws IOException, XMLStreamException {
+		Path dir = Files.createTempDirectory("partitions");
+		Path xml = write(dir, "<sailpoint><Rule name=\"a\"/><ImportAction name=\"include\" value=\"x.xml\"/><Bundle name=\"b\"/></sailpoint>");
+		assertTrue(IIQImportPartitioner.partition(xml, dir).isEmpty());
+	}
+	
+	@Test
+	public void testCycleIsImportedWhole() throws IOException, XMLStreamException {
+		Path dir = Files.createTempDirectory("partitions");
+		Path xml = write(dir, "<sailpoint>"
+				+ "<Bundle name=\"b\"><Reference class=\"sailpoint.object.Workflow\" name=\"w\"/></Bundle>"
+				+ "<Workflow name=\"w\"><Reference class=\"sailpoint.object.Bundle\" name=\"b\"/></Workflow>"
+				+ "</sailpoint>");
+		assertTrue(IIQImportPartitioner.partition(xml, dir).isEmpty());
+	}
+	
+	@Test
+	public void testSingleObjectIsImportedWhole() throws IOException, XMLStreamException {
+		Path dir = Files.createTempDirectory("partitions");
+		Path xml = write(dir, "<Rule name=\"a\"/>");
+		assertTrue(IIQImportPartitioner.partition(xml, dir).isEmpty());
+	}
+	
+	@Test
+	public void testImportAll() throws IOException, XMLStreamException {
+		Path dir = Files.createTempDirectory("partitions");
+		Path xml = write(dir, "<sailpoint><Rule name=\"r\"/>"
+				+ "<Application name=\"a\"><Reference class=\"sailpoint.object.Rule\" name=\"r\"/></Application></sailpoint>");
+		List<Partition> parts = IIQImportPartitioner.partition(xml, dir);
+		
+		assertTrue(IIQImportPartitioner.importAll(parts, new IIqConsoleCredentials("u", "p")));
+		
+		StringBuilder rpt = new StringBuilder();
+		IIQImportPartitioner.report(xml, parts, rpt);
+		assertEquals(Status.OK, parts.get(0).status);
+		assertEquals(Status.OK, parts.get(1).status);
+		assertTrue(rpt.toString(), rpt.toString().contains("type=[Application], objects=[1], dependsOn=[Rule], status=[OK]"));
+		IIQImportPartitioner.delete(dir);
+	}
+	
+	private static Path write(Path dir, String xml) throws IOException {
+		return Files.writeString(dir.resolve("bundle.xml"), xml);
+	}
+	
+}
@@ -1,10 +1,16 @@
 package net.brianjslattery.oss.propertizer.iiq;
 
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 
+import java.io.IOException;
 import java.lang.reflect.Constructor;
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Modifier;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
 
 import org.junit.Test;
 
@@ -18,4 +24,73 @@ public class IIQImporterTest {
 	    c.newInstance();
 	}
 	
+	@Test
+	public void testResolveDirectorySortedByName() throws IOException {
+		Path dir = Files.createTempDirectory("import");
+		Files.createFile(dir.resolve("b.xml"));
+		Files.createFile(dir.resolve("a.xml"));
+		Files.createFile(dir.resolve("notes.txt"));
+		
+		List<Path> files = IIQImporter.resolveFiles(dir.toString());
+		
+		assertEquals(2, files.size());
+		assertEquals("a.xml", files.get(0).getFileName().toString());
+		assertEquals("b.xml", files.get(1).getFileName().toString());
+	}
+	
+	@Test
+	public void testResolveManifestAndListInOrder() throws IOException {
+		Path dir = Files.createTempDirectory("import");
+		Path rules = Files.createDirectories(dir.resolve("rules"));
+		Files.createFile(rules.resolve("rule-2.xml"));
+		Files.createFile(rules.resolve("rule-1.xml"));
+		Path app = Files.createFile(dir.resolve("app.xml"));
+		Path last = Files.createFile(dir.resolve("last.xml"));
+		Path manifest = dir.resolve("import.manifest");
+		Files.writeString(manifest, "# applications first\napp.xml\n\nrules\napp.xml\n");
+		
+		List<Path> files = IIQImporter.resolveFiles(manifest + "," + last + "," + app);
+		
+		assertEquals(4, files.size());
+		assertEquals("app.xml",    files.get(0).getFileName().toString());
+		assertEquals("rule-1.xml", files.get(1).getFileName().toString());
+		assertEquals("rule-2.xml", files.get(2).getFileName().toString());
+		assertEquals("last.xml",   files.get(3).getFileName().toString());
+	}
+	
+	@Test
+	public void testResolveOtherFileAsIs() throws IOException {
+		Path dir = Files.createTempDirectory("import");
+		Path export = dir.resolve("export.txt");
+		Files.writeString(export, "<sailpoint>\n</sailpoint>\n");
+		
+		List<Path> files = IIQImporter.resolveFiles(export.toString());
+		
+		assertEquals(1, files.size());
+		assertEquals(export.toAbsolutePath().normalize(), files.get(0));
+	}
+	
+	@Test
+	public void testPartitionedImportIsWholeWithoutConcurrency() throws IOException {
+		Path dir = Files.createTempDirectory("import");
+		Path xml = Files.writeString(dir.resolve("bundle.xml"), "<sailpoint><Rule name=\"r\"/><Bundle name=\"b\"/></sailpoint>");
+		
+		// No workers or daemon in the test environment
+		StringBuilder rpt = new StringBuilder();
+		IIQImporter.runPartitionedImport(xml, new IIqConsoleCredentials("u", "p"), rpt, f -> {});
+		
+		assertTrue(rpt.toString(), rpt.toString().startsWith("IIQ import: file=[" + xml + "]"));
+		assertFalse(rpt.toString(), rpt.toString().contains("partition"));
+	}
+	
+	@Test(expected = IllegalArgumentException.class)
+	public void testResolveMissingFile() {
+		IIQImporter.resolveFiles("does-not-exist.xml");
+	}
+	
+	@Test(expected = IllegalArgumentException.class)
+	public void testResolveEmptyDirectory() throws IOException {
+		IIQImporter.resolveFiles(Files.createTempDirectory("import").toString());
+	}
+	
 }
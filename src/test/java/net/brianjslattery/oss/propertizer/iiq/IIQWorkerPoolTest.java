@@ -0,0 +1,106 @@
+/**
+ * Copyright © 2021 Brian J Slattery <oss@brnsl.com>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the “Software”), to
+ * deal in the Software without restriction, including without limitation the
+ * rights to use, copy, modify, merge, publish, distribute, sublicense, and/or
+ * sell copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED “AS IS”, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ * 
+ */
+package net.brianjslattery.oss.propertizer.iiq;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.net.URL;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Test;
+
+import net.brianjslattery.oss.propertizer.utilities.Environment;
+
+/**
+ * 
+ * @author Brian J Slattery <oss@brnsl.com>
+ * 
+ */
+public class IIQWorkerPoolTest {
+	
+	@Test
+	public void testDisabledByDefault() {
+		assertNull(IIQWorkerPool.from(environment(new HashMap<>())));
+	}
+	
+	@Test
+	public void testSingleWorkerRunsInProcess() {
+		Map<String, String> m = new HashMap<>();
+		m.put(IIQWorkerPool.WORKERS_VAR, "1");
+		assertNull(IIQWorkerPool.from(environment(m)));
+	}
+	
+	@Test
+	public void testInvalidWorkers() {
+		Map<String, String> m = new HashMap<>();
+		m.put(IIQWorkerPool.WORKERS_VAR, "many");
+		assertEquals(1, IIQWorkerPool.getWorkers(environment(m)));
+	}
+	
+	@Test
+	public void testWebInfFromEnvironment() {
+		Map<String, String> m = new HashMap<>();
+		m.put(IIQWorkerPool.WEB_INF_VAR, "/opt/iiq/WEB-INF");
+		assertEquals(Paths.get("/opt/iiq/WEB-INF"), IIQWorkerPool.findWebInf(environment(m)));
+	}
+	
+	@Test
+	public void testClasspath() throws IOException {
+		Path webInf = Files.createTempDirectory("WEB-INF");
+		Files.createDirectories(webInf.resolve("classes"));
+		Files.createDirectories(webInf.resolve("lib"));
+		Files.createFile(webInf.resolve("lib").resolve("b.jar"));
+		Files.createFile(webInf.resolve("lib").resolve("a.jar"));
+		Files.createFile(webInf.resolve("lib").resolve("notes.txt"));
+		
+		List<URL> cp = IIQWorkerPool.classpath(webInf);
+		
+		assertEquals(3, cp.size());
+		assertTrue(cp.get(0).toString().endsWith("classes/"));
+		assertTrue(cp.get(1).toString().endsWith("a.jar"));
+		assertTrue(cp.get(2).toString().endsWith("b.jar"));
+	}
+	
+	private Environment environment(Map<String, String> m) {
+		return new Environment() {
+			@Override
+			public String get(String key) {
+				return m.get(key);
+			}
+			@Override
+			public Map<String, String> get() {
+				return Collections.unmodifiableMap(m);
+			}
+		};
+	}
+	
+}
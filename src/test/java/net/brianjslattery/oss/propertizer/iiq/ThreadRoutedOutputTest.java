@@ -0,0 +1,146 @@
+/**
+ * Copyright © 2021 Brian J Slattery <oss@brnsl.com>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the “Software”), to
+ * deal in the Software without restriction, including without limitation the
+ * rights to use, copy, modify, merge, publish, distribute, sublicense, and/or
+ * sell copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED “AS IS”, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ * 
+ */
+package net.brianjslattery.oss.propertizer.iiq;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+
+import org.junit.Test;
+
+/**
+ * 
+ * @author Brian J Slattery <oss@brnsl.com>
+ * 
+ */
+public class ThreadRoutedOutputTest {
+	
+	@Test
+	public void testCapturesLines() {
+		List<String> lines = new ArrayList<>();
+		ThreadRoutedOutput.capture(lines::add, () -> {
+			System.out.println("first");
+			System.out.print("second\r\nthird");
+		});
+		assertEquals("[first, second, third]", lines.toString());
+	}
+	
+	@Test
+	public void testConsumerMayPrint() {
+		List<String> outer = new ArrayList<>();
+		List<String> inner = new ArrayList<>();
+		ThreadRoutedOutput.capture(outer::add, () ->
+			ThreadRoutedOutput.capture(line -> {
+				inner.add(line);
+				System.out.println("seen " + line);
+			}, () -> System.out.println("hello")));
+		assertEquals("[hello]", inner.toString());
+		assertEquals("[seen hello]", outer.toString());
+	}
+	
+	@Test
+	public void testConcurrentCapturesAreIsolated() {
+		int workers = 4;
+		CountDownLatch start = new CountDownLatch(workers);
+		List<CompletableFuture<List<String>>> results = new ArrayList<>();
+		
+		for (int w = 0; w < workers; w++) {
+			String id = "worker-" + w;
+			results.add(CompletableFuture.supplyAsync(() -> {
+				List<String> lines = Collections.synchronizedList(new ArrayList<>());
+				ThreadRoutedOutput.capture(lines::add, () -> {
+					start.countDown();
+					await(start);
+					for (int i = 0; i < 200; i++) {
+						System.out.println(id + ":" + i);
+					}
+				});
+				return lines;
+			}, r -> new Thread(r).start()));
+		}
+		
+		for (int w = 0; w < workers; w++) {
+			List<String> lines = results.get(w).join();
+			assertEquals(200, lines.size());
+			for (String line : lines) {
+				assertTrue(line, line.startsWith("worker-" + w + ":"));
+			}
+		}
+	}
+	
+	@Test
+	public void testOtherThreadsAreNotCaptured() {
+		List<String> lines = new ArrayList<>();
+		// Created outside the capture, so the route is not inherited
+		Thread other = new Thread(() -> System.out.println("not captured"));
+		ThreadRoutedOutput.capture(lines::add, () -> {
+			other.start();
+			join(other);
+			System.out.println("captured");
+		});
+		assertEquals("[captured]", lines.toString());
+	}
+	
+	@Test
+	public void testStartedThreadsAreReleasedWhenCaptureEnds() {
+		List<String> lines = Collections.synchronizedList(new ArrayList<>());
+		CountDownLatch ended = new CountDownLatch(1);
+		Thread[] started = new Thread[1];
+		ThreadRoutedOutput.capture(lines::add, () -> {
+			started[0] = new Thread(() -> {
+				System.out.println("during");
+				await(ended);
+				System.out.println("after");
+			});
+			started[0].start();
+			while (lines.isEmpty()) {
+				Thread.yield();
+			}
+		});
+		ended.countDown();
+		join(started[0]);
+		assertEquals("[during]", lines.toString());
+	}
+	
+	private static void await(CountDownLatch latch) {
+		try {
+			latch.await();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+	
+	private static void join(Thread t) {
+		try {
+			t.join();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+	
+}
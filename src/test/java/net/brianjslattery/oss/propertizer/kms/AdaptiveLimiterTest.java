@@ -0,0 +1,182 @@
+/**
+ * Copyright © 2021 Brian J Slattery <oss@brnsl.com>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the “Software”), to
+ * deal in the Software without restriction, including without limitation the
+ * rights to use, copy, modify, merge, publish, distribute, sublicense, and/or
+ * sell copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED “AS IS”, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ * 
+ */
+package net.brianjslattery.oss.propertizer.kms;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+import software.amazon.awssdk.awscore.exception.AwsErrorDetails;
+import software.amazon.awssdk.awscore.exception.AwsServiceException;
+
+/**
+ * 
+ * @author Brian J Slattery <oss@brnsl.com>
+ * 
+ */
+public class AdaptiveLimiterTest {
+	
+	@Test
+	public void testLimitGrowsWhileFast() {
+		AdaptiveLimiter limiter = new AdaptiveLimiter(2, 16, 200, 5_000);
+		FakeKms kms = new FakeKms(2, false);
+		
+		run(new LimitingDecryptionService(kms, limiter), 200, 16);
+		
+		assertTrue("Limit should grow, was " + limiter.getLimit(), limiter.getLimit() > 2);
+		assertEquals(0, limiter.getInFlight());
+	}
+	
+	@Test
+	public void testThrottlingCutsLimit() {
+		AdaptiveLimiter limiter = new AdaptiveLimiter(8, 16, 200, 5_000);
+		FakeKms kms = new FakeKms(1, true);
+		
+		try {
+			run(new LimitingDecryptionService(kms, limiter), 20, 8);
+			fail("Throttled calls should fail.");
+		} catch (IllegalStateException expected) {
+		}
+		
+		assertEquals(1, limiter.getLimit());
+		assertEquals(0, limiter.getInFlight());
+	}
+	
+	@Test
+	public void testSlowCallsCutLimit() {
+		AdaptiveLimiter limiter = new AdaptiveLimiter(8, 16, 5, 5_000);
+		FakeKms kms = new FakeKms(20, false);
+		
+		run(new LimitingDecryptionService(kms, limiter), 4, 4);
+		
+		assertTrue("Limit should shrink, was " + limiter.getLimit(), limiter.getLimit() < 8);
+	}
+	
+	@Test
+	public void testInFlightNeverExceedsLimit() {
+		AdaptiveLimiter limiter = new AdaptiveLimiter(3, 3, 1_000, 5_000);
+		FakeKms kms = new FakeKms(5, false);
+		
+		run(new LimitingDecryptionService(kms, limiter), 30, 12);
+		
+		assertTrue("Saw " + kms.maxSeen.get() + " concurrent calls", kms.maxSeen.get() <= 3);
+		assertTrue(limiter.getQueued() > 0);
+	}
+	
+	@Test
+	public void testRejectAfterMaxWait() {
+		AdaptiveLimiter limiter = new AdaptiveLimiter(1, 1, 1_000, 20);
+		limiter.acquire().join();
+		
+		try {
+			limiter.acquire().join();
+			fail("Second caller should be rejected.");
+		} catch (CompletionException e) {
+			assertTrue(e.getCause() instanceof AdaptiveLimiter.RejectedException);
+		}
+		assertEquals(1, limiter.getRejected());
+		
+		limiter.onIgnore();
+		assertEquals(0, limiter.getInFlight());
+	}
+	
+	@Test
+	public void testRejectionIsRetriedAsThrottling() {
+		assertEquals(DecryptRetryPolicy.ErrorClass.THROTTLING,
+				DecryptRetryPolicy.classify(new AdaptiveLimiter.RejectedException("full")));
+	}
+	
+	@Test
+	public void testAsyncPathReleases() {
+		AdaptiveLimiter limiter = new AdaptiveLimiter(2, 4, 1_000, 5_000);
+		LimitingDecryptionService svc = new LimitingDecryptionService(c -> c, limiter);
+		
+		CompletableFuture<String> f = svc.decryptAsync("x", Runnable::run);
+		assertEquals("x", f.join());
+		assertEquals(0, limiter.getInFlight());
+	}
+	
+	@Test
+	public void testReport() {
+		AdaptiveLimiter limiter = new AdaptiveLimiter(2, 4, 1_000, 5_000);
+		StringBuilder rpt = new StringBuilder();
+		new LimitingDecryptionService(c -> c, limiter).report(rpt);
+		assertTrue(rpt.toString().contains("limit=[2]"));
+		assertTrue(rpt.toString().contains("rejected=[0]"));
+	}
+	
+	private static void run(DecryptionService svc, int count, int parallelism) {
+		Map<String, String> src = new HashMap<>();
+		for (int i = 0; i < count; i++) {
+			src.put("k" + i, "v" + i);
+		}
+		new DecryptionPipeline(svc, parallelism).decryptAll(src);
+	}
+	
+	/**
+	 * Simulates KMS latency and throttling, tracking concurrency.
+	 */
+	private static class FakeKms implements DecryptionService {
+		
+		private final long latencyMillis;
+		private final boolean throttle;
+		private final AtomicInteger inFlight = new AtomicInteger();
+		private final AtomicInteger maxSeen  = new AtomicInteger();
+		
+		FakeKms(long latencyMillis, boolean throttle) {
+			this.latencyMillis = latencyMillis;
+			this.throttle      = throttle;
+		}
+		
+		@Override
+		public String decrypt(String ciphertext) {
+			maxSeen.accumulateAndGet(inFlight.incrementAndGet(), Math::max);
+			try {
+				Thread.sleep(latencyMillis);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			} finally {
+				inFlight.decrementAndGet();
+			}
+			if (throttle) {
+				throw AwsServiceException
+						.builder()
+						.message("Rate exceeded")
+						.statusCode(400)
+						.awsErrorDetails(AwsErrorDetails.builder().errorCode("ThrottlingException").build())
+						.build();
+			}
+			return ciphertext;
+		}
+		
+	}
+	
+}
@@ -0,0 +1,144 @@
+/**
+ * Copyright © 2021 Brian J Slattery <oss@brnsl.com>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the “Software”), to
+ * deal in the Software without restriction, including without limitation the
+ * rights to use, copy, modify, merge, publish, distribute, sublicense, and/or
+ * sell copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED “AS IS”, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ * 
+ */
+package net.brianjslattery.oss.propertizer.kms;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.Base64;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+import software.amazon.awssdk.core.SdkBytes;
+import software.amazon.awssdk.services.kms.KmsAsyncClient;
+import software.amazon.awssdk.services.kms.model.DecryptRequest;
+import software.amazon.awssdk.services.kms.model.DecryptResponse;
+import software.amazon.awssdk.services.kms.model.DescribeKeyRequest;
+import software.amazon.awssdk.services.kms.model.DescribeKeyResponse;
+
+/**
+ * 
+ * @author Brian J Slattery <oss@brnsl.com>
+ * 
+ */
+public class AwsKmsAsyncServiceTest {
+	
+	private static final String CIPHERTEXT = Base64.getEncoder().encodeToString("secret".getBytes(UTF_8));
+	
+	@Test
+	public void testConstruct() {
+		new AwsKmsAsyncService(KmsAsyncClient.builder().build(), "the-key");
+	}
+	
+	@Test
+	public void testDecryptAsync() throws InterruptedException, ExecutionException {
+		AwsKmsAsyncService svc = new AwsKmsAsyncService(echoClient(), "the-key");
+		assertEquals("secret", svc.decryptAsync(CIPHERTEXT).get());
+	}
+	
+	@Test
+	public void testDecryptAdapter() {
+		AwsKmsAsyncService svc = new AwsKmsAsyncService(echoClient(), "the-key");
+		assertEquals("secret", svc.decrypt(CIPHERTEXT));
+	}
+	
+	@Test
+	public void testDecryptAdapterUnwrapsFailure() {
+		AwsKmsAsyncService svc = new AwsKmsAsyncService(failingClient(), "the-key");
+		try {
+			svc.decrypt(CIPHERTEXT);
+			fail("Should rethrow the client failure.");
+		} catch (IllegalStateException e) {
+			assertEquals("kms down", e.getMessage());
+		}
+	}
+	
+	@Test
+	public void testInvalidBase64FailsFuture() {
+		AwsKmsAsyncService svc = new AwsKmsAsyncService(echoClient(), "the-key");
+		assertTrue(svc.decryptAsync("not base64!").isCompletedExceptionally());
+	}
+	
+	@Test
+	public void testWarmUpDescribesKey() {
+		AtomicInteger calls = new AtomicInteger();
+		KmsAsyncClient client = new FakeClient() {
+			@Override
+			public CompletableFuture<DescribeKeyResponse> describeKey(DescribeKeyRequest r) {
+				assertEquals("the-key", r.keyId());
+				calls.incrementAndGet();
+				return CompletableFuture.completedFuture(null);
+			}
+		};
+		new AwsKmsAsyncService(client, "the-key").warmUp(() -> null);
+		assertEquals(1, calls.get());
+	}
+	
+	@Test
+	public void testWarmUpFailureIsIgnored() {
+		AwsKmsAsyncService svc = new AwsKmsAsyncService(failingClient(), "the-key");
+		svc.warmUp(() -> null);
+		svc.warmUp(() -> {
+			throw new IllegalStateException("no credentials");
+		});
+	}
+	
+	private static KmsAsyncClient echoClient() {
+		return new FakeClient() {
+			@Override
+			public CompletableFuture<DecryptResponse> decrypt(DecryptRequest r) {
+				SdkBytes plaintext = SdkBytes.fromByteArray(r.ciphertextBlob().asByteArray());
+				return CompletableFuture.completedFuture(DecryptResponse.builder().plaintext(plaintext).build());
+			}
+		};
+	}
+	
+	private static KmsAsyncClient failingClient() {
+		return new FakeClient() {
+			@Override
+			public CompletableFuture<DecryptResponse> decrypt(DecryptRequest r) {
+				return CompletableFuture.failedFuture(new IllegalStateException("kms down"));
+			}
+			@Override
+			public CompletableFuture<DescribeKeyResponse> describeKey(DescribeKeyRequest r) {
+				return CompletableFuture.failedFuture(new IllegalStateException("kms down"));
+			}
+		};
+	}
+	
+	private abstract static class FakeClient implements KmsAsyncClient {
+		@Override
+		public String serviceName() {
+			return "kms";
+		}
+		@Override
+		public void close() {
+		}
+	}
+	
+}
@@ -0,0 +1,153 @@
+/**
+ * Copyright © 2021 Brian J Slattery <oss@brnsl.com>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the “Software”), to
+ * deal in the Software without restriction, including without limitation the
+ * rights to use, copy, modify, merge, publish, distribute, sublicense, and/or
+ * sell copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED “AS IS”, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ * 
+ */
+package net.brianjslattery.oss.propertizer.kms;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+/**
+ * 
+ * @author Brian J Slattery <oss@brnsl.com>
+ * 
+ */
+public class CachingDecryptionServiceTest {
+	
+	@Test
+	public void testRepeatIsServedFromCache() {
+		AtomicInteger calls = new AtomicInteger();
+		CachingDecryptionService svc = new CachingDecryptionService(c -> {
+			calls.incrementAndGet();
+			return c + "-plain";
+		});
+		
+		assertEquals("a-plain", svc.decrypt("a"));
+		assertEquals("a-plain", svc.decrypt("a"));
+		assertEquals("b-plain", svc.decrypt("b"));
+		
+		assertEquals(2, calls.get());
+		assertEquals(1, svc.getHits());
+		assertEquals(2, svc.getMisses());
+	}
+	
+	@Test
+	public void testConcurrentRequestsShareOneCall() {
+		AtomicInteger calls = new AtomicInteger();
+		CompletableFuture<String> pending = new CompletableFuture<>();
+		
+		DecryptionService slow = new DecryptionService() {
+			@Override
+			public String decrypt(String ciphertext) {
+				return pending.join();
+			}
+			@Override
+			public CompletableFuture<String> decryptAsync(String ciphertext, Executor executor) {
+				calls.incrementAndGet();
+				return pending;
+			}
+		};
+		
+		CachingDecryptionService svc = new CachingDecryptionService(slow);
+		CompletableFuture<String> first  = svc.decryptAsync("db-pass");
+		CompletableFuture<String> second = svc.decryptAsync("db-pass");
+		pending.complete("secret");
+		
+		assertEquals("secret", first.join());
+		assertEquals("secret", second.join());
+		assertEquals(1, calls.get());
+	}
+	
+	@Test
+	public void testSameCiphertextAcrossBatches() {
+		AtomicInteger calls = new AtomicInteger();
+		CachingDecryptionService svc = new CachingDecryptionService(c -> {
+			calls.incrementAndGet();
+			return c;
+		});
+		
+		Map<String, String> iiq = new HashMap<>();
+		iiq.put("dataSource.password", "shared-ciphertext");
+		iiq.put("other",               "other-ciphertext");
+		
+		Map<String, String> target = new HashMap<>();
+		target.put("target.password",  "shared-ciphertext");
+		
+		svc.decryptAll(iiq);
+		svc.decryptAll(target);
+		
+		assertEquals(2, calls.get());
+		assertEquals(1, svc.getHits());
+	}
+	
+	@Test
+	public void testFailuresAreNotCached() {
+		AtomicInteger calls = new AtomicInteger();
+		CachingDecryptionService svc = new CachingDecryptionService(c -> {
+			if (calls.incrementAndGet() == 1) throw new IllegalStateException("throttled");
+			return c;
+		});
+		
+		try {
+			svc.decrypt("x");
+			fail("First call should fail.");
+		} catch (IllegalStateException expected) {
+		}
+		
+		assertEquals("x", svc.decrypt("x"));
+		assertEquals(2, calls.get());
+	}
+	
+	@Test
+	public void testCloseClearsCache() {
+		AtomicInteger calls = new AtomicInteger();
+		CachingDecryptionService svc = new CachingDecryptionService(c -> {
+			calls.incrementAndGet();
+			return c;
+		});
+		
+		svc.decrypt("x");
+		svc.close();
+		svc.decrypt("x");
+		
+		assertEquals(2, calls.get());
+	}
+	
+	@Test
+	public void testReport() {
+		CachingDecryptionService svc = new CachingDecryptionService(c -> c);
+		svc.decrypt("x");
+		svc.decrypt("x");
+		StringBuilder rpt = new StringBuilder();
+		svc.report(rpt);
+		assertTrue(rpt.toString().contains("hits=[1], misses=[1]"));
+	}
+	
+}
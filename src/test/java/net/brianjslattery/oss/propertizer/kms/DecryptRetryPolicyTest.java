@@ -0,0 +1,179 @@
+/**
+ * Copyright © 2021 Brian J Slattery <oss@brnsl.com>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the “Software”), to
+ * deal in the Software without restriction, including without limitation the
+ * rights to use, copy, modify, merge, publish, distribute, sublicense, and/or
+ * sell copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED “AS IS”, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ * 
+ */
+package net.brianjslattery.oss.propertizer.kms;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+import net.brianjslattery.oss.propertizer.kms.DecryptRetryPolicy.ErrorClass;
+import software.amazon.awssdk.awscore.exception.AwsErrorDetails;
+import software.amazon.awssdk.awscore.exception.AwsServiceException;
+import software.amazon.awssdk.core.exception.SdkClientException;
+
+/**
+ * 
+ * @author Brian J Slattery <oss@brnsl.com>
+ * 
+ */
+public class DecryptRetryPolicyTest {
+	
+	private final List<Long> sleeps = new ArrayList<>();
+	
+	@Test
+	public void testClassify() {
+		assertEquals(ErrorClass.THROTTLING, DecryptRetryPolicy.classify(throttled()));
+		assertEquals(ErrorClass.TRANSIENT,  DecryptRetryPolicy.classify(serviceError("KMSInternalException", 500)));
+		assertEquals(ErrorClass.FATAL,      DecryptRetryPolicy.classify(serviceError("InvalidCiphertextException", 400)));
+		assertEquals(ErrorClass.TRANSIENT,  DecryptRetryPolicy.classify(networkError()));
+		assertEquals(ErrorClass.FATAL,      DecryptRetryPolicy.classify(SdkClientException.create("Unable to load credentials")));
+		assertEquals(ErrorClass.FATAL,      DecryptRetryPolicy.classify(new IllegalArgumentException("bad base64")));
+		assertEquals(ErrorClass.THROTTLING, DecryptRetryPolicy.classify(new CompletionException(throttled())));
+	}
+	
+	@Test
+	public void testRetriesThrottlingThenSucceeds() {
+		DecryptRetryPolicy policy = policy(5, 100);
+		AtomicInteger calls = new AtomicInteger();
+		
+		String res = policy.execute(() -> {
+			if (calls.incrementAndGet() < 3) throw throttled();
+			return "ok";
+		});
+		
+		assertEquals("ok", res);
+		assertEquals(2, policy.getRetries());
+		assertEquals(2, policy.getThrottledRetries());
+		assertEquals(2, sleeps.size());
+		assertEquals(sleeps.get(0) + sleeps.get(1), policy.getBackoffMillis());
+	}
+	
+	@Test
+	public void testDecorrelatedJitterStaysInBounds() {
+		DecryptRetryPolicy policy = policy(50, 1000);
+		try {
+			policy.execute(() -> { throw throttled(); });
+			fail("Should give up after max attempts.");
+		} catch (AwsServiceException expected) {
+		}
+		
+		assertEquals(49, sleeps.size());
+		long prev = 10;
+		for (long s : sleeps) {
+			assertTrue("Delay below base: " + s, s >= 10);
+			assertTrue("Delay above cap: " + s,  s <= 200);
+			assertTrue("Delay above 3x previous: " + s, s <= Math.max(11, prev * 3));
+			prev = s;
+		}
+	}
+	
+	@Test
+	public void testFatalNotRetried() {
+		DecryptRetryPolicy policy = policy(5, 100);
+		AtomicInteger calls = new AtomicInteger();
+		try {
+			policy.execute(() -> {
+				calls.incrementAndGet();
+				throw serviceError("AccessDeniedException", 400);
+			});
+			fail("Should rethrow fatal errors.");
+		} catch (AwsServiceException expected) {
+		}
+		assertEquals(1, calls.get());
+		assertEquals(0, policy.getRetries());
+	}
+	
+	@Test
+	public void testBudgetIsSharedAcrossCalls() {
+		DecryptRetryPolicy policy = policy(10, 3);
+		AtomicInteger calls = new AtomicInteger();
+		
+		for (int i = 0; i < 2; i++) {
+			try {
+				policy.execute(() -> {
+					calls.incrementAndGet();
+					throw throttled();
+				});
+				fail("Should fail once budget is spent.");
+			} catch (AwsServiceException expected) {
+			}
+		}
+		
+		// 3 retries from the budget, plus the first attempt of each call
+		assertEquals(5, calls.get());
+		assertEquals(3, policy.getRetries());
+		assertEquals(2, policy.getBudgetExhausted());
+	}
+	
+	@Test
+	public void testAsyncRetries() {
+		DecryptRetryPolicy policy = policy(5, 100);
+		AtomicInteger calls = new AtomicInteger();
+		
+		String res = policy.executeAsync(() -> calls.incrementAndGet() < 3
+					? CompletableFuture.<String>failedFuture(networkError())
+					: CompletableFuture.completedFuture("ok"), Runnable::run).join();
+		
+		assertEquals("ok", res);
+		assertEquals(2, policy.getRetries());
+	}
+	
+	@Test
+	public void testReport() {
+		DecryptRetryPolicy policy = policy(5, 100);
+		StringBuilder rpt = new StringBuilder();
+		policy.report(rpt);
+		assertTrue(rpt.toString().contains("KMS retries=[0]"));
+	}
+	
+	private DecryptRetryPolicy policy(int maxAttempts, int budget) {
+		return new DecryptRetryPolicy(maxAttempts, 10, 200, budget, sleeps::add);
+	}
+	
+	private static AwsServiceException throttled() {
+		return serviceError("ThrottlingException", 400);
+	}
+	
+	private static AwsServiceException serviceError(String code, int status) {
+		return AwsServiceException
+				.builder()
+				.message(code)
+				.statusCode(status)
+				.awsErrorDetails(AwsErrorDetails.builder().errorCode(code).build())
+				.build();
+	}
+	
+	private static SdkClientException networkError() {
+		return SdkClientException.create("Unable to execute HTTP request", new IOException("Connection reset"));
+	}
+	
+}
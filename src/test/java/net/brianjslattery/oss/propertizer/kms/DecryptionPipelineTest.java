@@ -0,0 +1,147 @@
+/**
+ * Copyright © 2021 Brian J Slattery <oss@brnsl.com>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the “Software”), to
+ * deal in the Software without restriction, including without limitation the
+ * rights to use, copy, modify, merge, publish, distribute, sublicense, and/or
+ * sell copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED “AS IS”, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ * 
+ */
+package net.brianjslattery.oss.propertizer.kms;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+/**
+ * 
+ * @author Brian J Slattery <oss@brnsl.com>
+ * 
+ */
+public class DecryptionPipelineTest {
+	
+	@Test
+	public void testResultsInKeyOrder() {
+		Map<String, String> src = new HashMap<>();
+		src.put("c", "3");
+		src.put("a", "1");
+		src.put("b", "2");
+		
+		DecryptionPipeline pipeline = new DecryptionPipeline(c -> c + "!", 2);
+		SortedMap<String, String> out = pipeline.decryptAll(src);
+		
+		assertEquals("[a, b, c]", new ArrayList<>(out.keySet()).toString());
+		assertEquals("1!", out.get("a"));
+		assertEquals("3!", out.get("c"));
+	}
+	
+	@Test
+	public void testParallelismIsBounded() {
+		AtomicInteger inFlight = new AtomicInteger();
+		AtomicInteger maxSeen  = new AtomicInteger();
+		
+		DecryptionService slow = c -> {
+			maxSeen.accumulateAndGet(inFlight.incrementAndGet(), Math::max);
+			sleep(20);
+			inFlight.decrementAndGet();
+			return c;
+		};
+		
+		Map<String, String> src = new HashMap<>();
+		for (int i = 0; i < 12; i++) {
+			src.put("k" + i, "v" + i);
+		}
+		
+		new DecryptionPipeline(slow, 3).decryptAll(src);
+		assertTrue("Should never exceed parallelism, saw " + maxSeen.get(), maxSeen.get() <= 3);
+	}
+	
+	@Test
+	public void testFailuresReportedPerKey() {
+		Map<String, String> src = new HashMap<>();
+		src.put("good", "ok");
+		src.put("bad1", "boom1");
+		src.put("bad2", "boom2");
+		src.put("bad3", "boom2");
+		
+		DecryptionService svc = c -> {
+			if (c.startsWith("boom")) throw new IllegalArgumentException("bad ciphertext");
+			return c;
+		};
+		
+		try {
+			new DecryptionPipeline(svc, 4).decryptAll(src);
+			fail("Should throw when any key fails.");
+		} catch (IllegalStateException ise) {
+			assertTrue(ise.getMessage().contains("[bad1, bad2, bad3]"));
+			assertEquals(1, ise.getSuppressed().length);
+		}
+	}
+	
+	@Test
+	public void testDuplicateCiphertextsDecryptedOnce() {
+		Map<String, String> src = new HashMap<>();
+		src.put("a", "same");
+		src.put("b", "same");
+		src.put("c", "other");
+		
+		AtomicInteger calls = new AtomicInteger();
+		SortedMap<String, String> out = new DecryptionPipeline(c -> {
+			calls.incrementAndGet();
+			return c + "!";
+		}, 2).decryptAll(src);
+		
+		assertEquals(2, calls.get());
+		assertEquals("same!", out.get("a"));
+		assertEquals("same!", out.get("b"));
+		assertEquals("other!", out.get("c"));
+	}
+	
+	@Test
+	public void testDefaultDecryptAll() {
+		Map<String, String> src = new HashMap<>();
+		src.put("b", "2");
+		src.put("a", "1");
+		
+		DecryptionService svc = c -> c + "!";
+		Map<String, String> out = svc.decryptAll(src);
+		
+		assertEquals("[a, b]", new ArrayList<>(out.keySet()).toString());
+		assertEquals("2!", out.get("b"));
+	}
+	
+	@Test(expected = IllegalArgumentException.class)
+	public void testInvalidParallelism() {
+		new DecryptionPipeline(c -> c, 0);
+	}
+	
+	private static void sleep(long millis) {
+		try {
+			Thread.sleep(millis);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+	
+}
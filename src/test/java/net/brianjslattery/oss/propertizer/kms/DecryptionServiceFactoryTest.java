@@ -0,0 +1,66 @@
+/**
+ * Copyright © 2021 Brian J Slattery <oss@brnsl.com>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the “Software”), to
+ * deal in the Software without restriction, including without limitation the
+ * rights to use, copy, modify, merge, publish, distribute, sublicense, and/or
+ * sell copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED “AS IS”, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ * 
+ */
+package net.brianjslattery.oss.propertizer.kms;
+
+import static org.junit.Assert.assertSame;
+
+import org.junit.After;
+import org.junit.Test;
+
+/**
+ * 
+ * @author Brian J Slattery <oss@brnsl.com>
+ * 
+ */
+public class DecryptionServiceFactoryTest {
+	
+	@After
+	public void cleanup() {
+		DecryptionServiceFactory.shutdown();
+	}
+	
+	@Test
+	public void testServiceIsShared() {
+		assertSame(DecryptionServiceFactory.getService(), DecryptionServiceFactory.getService());
+	}
+	
+	@Test
+	public void testAsyncServiceIsShared() {
+		assertSame(DecryptionServiceFactory.getAsyncService(), DecryptionServiceFactory.getAsyncService());
+	}
+	
+	@Test
+	public void testWarmUpWithoutKeyIsNoop() {
+		DecryptionServiceFactory.warmUpService();
+		DecryptionServiceFactory.warmUpAsyncService();
+		assertSame(DecryptionServiceFactory.getAsyncService(), DecryptionServiceFactory.getAsyncService());
+	}
+	
+	@Test
+	public void testShutdownIsRepeatable() {
+		DecryptionServiceFactory.getService();
+		DecryptionServiceFactory.shutdown();
+		DecryptionServiceFactory.shutdown();
+	}
+	
+}
@@ -0,0 +1,82 @@
+/**
+ * Copyright © 2021 Brian J Slattery <oss@brnsl.com>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the “Software”), to
+ * deal in the Software without restriction, including without limitation the
+ * rights to use, copy, modify, merge, publish, distribute, sublicense, and/or
+ * sell copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED “AS IS”, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ * 
+ */
+package net.brianjslattery.oss.propertizer.kms;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.fail;
+
+import java.util.Base64;
+
+import org.junit.Test;
+
+/**
+ * 
+ * @author Brian J Slattery <oss@brnsl.com>
+ * 
+ */
+public class EnvelopeDecryptionServiceTest {
+	
+	private static final byte[] KEY = new byte[32];
+	static {
+		for (int i = 0; i < KEY.length; i++) KEY[i] = (byte) i;
+	}
+	
+	@Test
+	public void testRoundTrip() {
+		String ct = EnvelopeEncryptor.encrypt(KEY, "th$e.passWord#");
+		try (EnvelopeDecryptionService svc = new EnvelopeDecryptionService(KEY)) {
+			assertEquals("th$e.passWord#", svc.decrypt(ct));
+		}
+	}
+	
+	@Test
+	public void testFreshIvPerValue() {
+		assertNotEquals(EnvelopeEncryptor.encrypt(KEY, "same"), EnvelopeEncryptor.encrypt(KEY, "same"));
+	}
+	
+	@Test(expected = IllegalStateException.class)
+	public void testTamperedValueFails() {
+		byte[] ct = Base64.getDecoder().decode(EnvelopeEncryptor.encrypt(KEY, "value"));
+		ct[ct.length - 1] ^= 1;
+		new EnvelopeDecryptionService(KEY).decrypt(Base64.getEncoder().encodeToString(ct));
+	}
+	
+	@Test
+	public void testCloseWipesKey() {
+		String ct = EnvelopeEncryptor.encrypt(KEY, "value");
+		EnvelopeDecryptionService svc = new EnvelopeDecryptionService(KEY);
+		svc.close();
+		try {
+			svc.decrypt(ct);
+			fail("Should not decrypt with a wiped key.");
+		} catch (IllegalStateException expected) {
+		}
+	}
+	
+	@Test(expected = IllegalArgumentException.class)
+	public void testTooShort() {
+		new EnvelopeDecryptionService(KEY).decrypt(Base64.getEncoder().encodeToString(new byte[4]));
+	}
+	
+}
@@ -0,0 +1,141 @@
+/**
+ * Copyright © 2021 Brian J Slattery <oss@brnsl.com>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the “Software”), to
+ * deal in the Software without restriction, including without limitation the
+ * rights to use, copy, modify, merge, publish, distribute, sublicense, and/or
+ * sell copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED “AS IS”, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ * 
+ */
+package net.brianjslattery.oss.propertizer.kms;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+/**
+ * 
+ * @author Brian J Slattery <oss@brnsl.com>
+ * 
+ */
+public class HedgingDecryptionServiceTest {
+	
+	@Test
+	public void testFastCallIsNotHedged() {
+		AtomicInteger calls = new AtomicInteger();
+		HedgingDecryptionService svc = new HedgingDecryptionService(c -> {
+			calls.incrementAndGet();
+			return c + "-plain";
+		}, 95, 100, 1000);
+		
+		assertEquals("a-plain", svc.decrypt("a"));
+		assertEquals(1, calls.get());
+		assertEquals(0, svc.getHedges());
+		svc.close();
+	}
+	
+	@Test
+	public void testHedgeWinsWhenPrimaryStalls() {
+		AtomicInteger calls = new AtomicInteger();
+		CompletableFuture<String> stalled = new CompletableFuture<>();
+		
+		DecryptionService stallFirst = new DecryptionService() {
+			@Override
+			public String decrypt(String ciphertext) {
+				return decryptAsync(ciphertext, Runnable::run).join();
+			}
+			@Override
+			public CompletableFuture<String> decryptAsync(String ciphertext, Executor executor) {
+				return calls.incrementAndGet() == 1 ? stalled : CompletableFuture.completedFuture(ciphertext + "-plain");
+			}
+		};
+		
+		HedgingDecryptionService svc = new HedgingDecryptionService(stallFirst, 95, 100, 10);
+		assertEquals("a-plain", svc.decrypt("a"));
+		assertEquals(2, calls.get());
+		assertEquals(1, svc.getHedges());
+		assertEquals(1, svc.getHedgeWins());
+		
+		StringBuilder rpt = new StringBuilder();
+		svc.report(rpt);
+		assertTrue(rpt.toString().contains("extraCalls=[1], hedgeWins=[1]"));
+		svc.close();
+	}
+	
+	@Test
+	public void testExtraCallsAreCapped() {
+		AtomicInteger calls = new AtomicInteger();
+		DecryptionService slow = c -> {
+			calls.incrementAndGet();
+			try {
+				Thread.sleep(50);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+			return c;
+		};
+		
+		// 10% of 3 decrypts still allows one hedge
+		HedgingDecryptionService svc = new HedgingDecryptionService(slow, 95, 10, 5);
+		CompletableFuture<?> all = CompletableFuture.allOf(
+				svc.decryptAsync("a"), svc.decryptAsync("b"), svc.decryptAsync("c"));
+		all.join();
+		
+		assertEquals(1, svc.getHedges());
+		svc.close();
+	}
+	
+	@Test
+	public void testFailsWhenPrimaryAndHedgeFail() {
+		AtomicInteger calls = new AtomicInteger();
+		DecryptionService failing = new DecryptionService() {
+			@Override
+			public String decrypt(String ciphertext) {
+				throw new IllegalStateException();
+			}
+			@Override
+			public CompletableFuture<String> decryptAsync(String ciphertext, Executor executor) {
+				int n = calls.incrementAndGet();
+				return CompletableFuture.supplyAsync(() -> {
+					try {
+						Thread.sleep(n == 1 ? 100 : 0);
+					} catch (InterruptedException e) {
+						Thread.currentThread().interrupt();
+					}
+					throw new IllegalStateException("boom-" + n);
+				});
+			}
+		};
+		
+		HedgingDecryptionService svc = new HedgingDecryptionService(failing, 95, 100, 10);
+		try {
+			svc.decrypt("a");
+			fail("Expected failure");
+		} catch (IllegalStateException e) {
+			// The primary fails last, after the hedge
+			assertEquals("boom-1", e.getMessage());
+		}
+		assertEquals(2, calls.get());
+		svc.close();
+	}
+	
+}
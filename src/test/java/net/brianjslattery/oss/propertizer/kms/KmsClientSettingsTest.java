@@ -0,0 +1,91 @@
+/**
+ * Copyright © 2021 Brian J Slattery <oss@brnsl.com>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the “Software”), to
+ * deal in the Software without restriction, including without limitation the
+ * rights to use, copy, modify, merge, publish, distribute, sublicense, and/or
+ * sell copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED “AS IS”, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ * 
+ */
+package net.brianjslattery.oss.propertizer.kms;
+
+import static org.junit.Assert.assertEquals;
+
+import java.time.Duration;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.Test;
+
+import net.brianjslattery.oss.propertizer.utilities.Environment;
+
+/**
+ * 
+ * @author Brian J Slattery <oss@brnsl.com>
+ * 
+ */
+public class KmsClientSettingsTest {
+	
+	@Test
+	public void testDefaults() {
+		KmsClientSettings s = KmsClientSettings.from(environment(new HashMap<>()));
+		assertEquals(16, s.getMaxConnections());
+		assertEquals(Duration.ofSeconds(60), s.getConnectionTtl());
+		assertEquals(Duration.ofSeconds(5),  s.getSocketTimeout());
+		assertEquals(Duration.ofSeconds(2),  s.getConnectTimeout());
+	}
+	
+	@Test
+	public void testFromEnvironment() {
+		Map<String, String> m = new HashMap<>();
+		m.put(KmsClientSettings.MAX_CONNECTIONS_VAR, "4");
+		m.put(KmsClientSettings.CONNECTION_TTL_VAR,  "30000");
+		m.put(KmsClientSettings.SOCKET_TIMEOUT_VAR,  "1500");
+		m.put(KmsClientSettings.CONNECT_TIMEOUT_VAR, "750");
+		
+		KmsClientSettings s = KmsClientSettings.from(environment(m));
+		assertEquals(4, s.getMaxConnections());
+		assertEquals(Duration.ofSeconds(30),    s.getConnectionTtl());
+		assertEquals(Duration.ofMillis(1500),   s.getSocketTimeout());
+		assertEquals(Duration.ofMillis(750),    s.getConnectTimeout());
+	}
+	
+	@Test
+	public void testInvalidFallsBackToDefault() {
+		Map<String, String> m = new HashMap<>();
+		m.put(KmsClientSettings.MAX_CONNECTIONS_VAR, "lots");
+		m.put(KmsClientSettings.SOCKET_TIMEOUT_VAR,  "-1");
+		
+		KmsClientSettings s = KmsClientSettings.from(environment(m));
+		assertEquals(16, s.getMaxConnections());
+		assertEquals(Duration.ofSeconds(5), s.getSocketTimeout());
+	}
+	
+	private Environment environment(Map<String, String> m) {
+		return new Environment() {
+			@Override
+			public String get(String key) {
+				return m.get(key);
+			}
+			@Override
+			public Map<String, String> get() {
+				return Collections.unmodifiableMap(m);
+			}
+		};
+	}
+	
+}
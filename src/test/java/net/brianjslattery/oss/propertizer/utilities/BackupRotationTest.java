@@ -0,0 +1,144 @@
+/**
+ * Copyright © 2021 Brian J Slattery <oss@brnsl.com>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the “Software”), to
+ * deal in the Software without restriction, including without limitation the
+ * rights to use, copy, modify, merge, publish, distribute, sublicense, and/or
+ * sell copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED “AS IS”, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ * 
+ */
+package net.brianjslattery.oss.propertizer.utilities;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.PosixFilePermission;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.stream.Collectors;
+import java.util.zip.GZIPInputStream;
+
+import org.junit.Test;
+
+/**
+ * 
+ * @author Brian J Slattery <oss@brnsl.com>
+ * 
+ */
+public class BackupRotationTest {
+	
+	private static final LocalDateTime NOW = LocalDateTime.of(2021, 6, 10, 12, 0, 0);
+	
+	@Test
+	public void testMaxCount() throws IOException {
+		Path dir = backups();
+		new BackupRotation(2, null, false).prune(dir.resolve("iiq.properties"), NOW);
+		assertEquals("[iiq.properties, iiq.properties-2021-06-09T10-00.bak, iiq.properties-2021-06-10T11-59-30.123.bak, "
+				+ "notes.bak, target.properties-2021-01-01T00-00.bak]", names(dir).toString());
+	}
+	
+	@Test
+	public void testMaxAgeKeepsNewest() throws IOException {
+		Path dir = backups();
+		new BackupRotation(0, Duration.ofDays(2), false).prune(dir.resolve("iiq.properties"), NOW);
+		assertEquals(2, names(dir).stream().filter(n -> n.startsWith("iiq.properties-")).count());
+		
+		// Only the newest is left when every backup is too old
+		new BackupRotation(0, Duration.ofDays(1), false).prune(dir.resolve("iiq.properties"), NOW.plusDays(30));
+		assertEquals(1, names(dir).stream().filter(n -> n.startsWith("iiq.properties-")).count());
+		assertTrue(names(dir).contains("target.properties-2021-01-01T00-00.bak"));
+	}
+	
+	@Test
+	public void testCompressAllButNewest() throws IOException {
+		Path dir = backups();
+		new BackupRotation(0, null, true).prune(dir.resolve("iiq.properties"), NOW);
+		Set<String> names = names(dir);
+		assertTrue(names.toString(), names.contains("iiq.properties-2021-06-10T11-59-30.123.bak"));
+		assertTrue(names.toString(), names.contains("iiq.properties-2021-06-09T10-00.bak.gz"));
+		assertFalse(names.toString(), names.contains("iiq.properties-2021-06-09T10-00.bak"));
+		
+		try (InputStream in = new GZIPInputStream(Files.newInputStream(dir.resolve("iiq.properties-2021-06-09T10-00.bak.gz")))) {
+			assertEquals("2021-06-09T10-00", new String(in.readAllBytes()));
+		}
+		
+		// Already compressed backups are counted, not compressed again
+		new BackupRotation(2, null, true).prune(dir.resolve("iiq.properties"), NOW);
+		assertEquals(2, names(dir).stream().filter(n -> n.startsWith("iiq.properties-")).count());
+	}
+	
+	@Test
+	public void testCompressKeepsPermissions() throws IOException {
+		if (!FileSystems.getDefault().supportedFileAttributeViews().contains("posix")) {
+			return;
+		}
+		Path dir = backups();
+		Path bak = dir.resolve("iiq.properties-2021-06-09T10-00.bak");
+		Set<PosixFilePermission> ownerOnly = PosixFilePermissions.fromString("rw-------");
+		Files.setPosixFilePermissions(bak, ownerOnly);
+		new BackupRotation(0, null, true).prune(dir.resolve("iiq.properties"), NOW);
+		assertEquals(ownerOnly, Files.getPosixFilePermissions(dir.resolve("iiq.properties-2021-06-09T10-00.bak.gz")));
+	}
+	
+	@Test
+	public void testDisabledByDefault() {
+		assertFalse(BackupRotation.from(environment(new HashMap<>())).isEnabled());
+		Map<String, String> m = new HashMap<>();
+		m.put(BackupRotation.MAX_COUNT_VAR, "5");
+		assertTrue(BackupRotation.from(environment(m)).isEnabled());
+	}
+	
+	private static Path backups() throws IOException {
+		Path dir = Files.createTempDirectory("backups");
+		Files.writeString(dir.resolve("iiq.properties"), "live");
+		for (String stamp : new String[] { "2021-06-10T11-59-30.123", "2021-06-09T10-00", "2021-06-01T08-30-15", "2020-12-31T23-59-59.5" }) {
+			Files.writeString(dir.resolve("iiq.properties-" + stamp + ".bak"), stamp);
+		}
+		Files.writeString(dir.resolve("target.properties-2021-01-01T00-00.bak"), "other file");
+		Files.writeString(dir.resolve("notes.bak"), "not a backup of ours");
+		return dir;
+	}
+	
+	private static Set<String> names(Path dir) throws IOException {
+		return Files.list(dir).map(p -> p.getFileName().toString()).collect(Collectors.toCollection(TreeSet::new));
+	}
+	
+	private static Environment environment(Map<String, String> m) {
+		return new Environment() {
+			@Override
+			public String get(String key) {
+				return m.get(key);
+			}
+			@Override
+			public Map<String, String> get() {
+				return Collections.unmodifiableMap(m);
+			}
+		};
+	}
+	
+}
@@ -0,0 +1,122 @@
+/**
+ * Copyright © 2021 Brian J Slattery <oss@brnsl.com>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the “Software”), to
+ * deal in the Software without restriction, including without limitation the
+ * rights to use, copy, modify, merge, publish, distribute, sublicense, and/or
+ * sell copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED “AS IS”, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ * 
+ */
+package net.brianjslattery.oss.propertizer.utilities;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Properties;
+
+import org.junit.Test;
+
+/**
+ * 
+ * @author Brian J Slattery <oss@brnsl.com>
+ * 
+ */
+public class PropertiesPatcherTest {
+	
+	private static final String NL = System.lineSeparator();
+	
+	@Test
+	public void testReplacesOnlyKeysBeingSet() throws IOException {
+		String in = "# IIQ settings\n"
+				  + "\n"
+				  + "dataSource.url = jdbc:old\n"
+				  + "  ! indented comment\n"
+				  + "other:keep   this\n"
+				  + "dataSource.url=jdbc:duplicate\n";
+		Map<String, String> updates = new LinkedHashMap<>();
+		updates.put("dataSource.url", "jdbc:new");
+		
+		assertEquals("# IIQ settings\n"
+				   + "\n"
+				   + "dataSource.url=jdbc\\:new\n"
+				   + "  ! indented comment\n"
+				   + "other:keep   this\n"
+				   + "dataSource.url=jdbc\\:new\n", patch(in, updates, null));
+	}
+	
+	@Test
+	public void testAppendsNewKeysInOrder() throws IOException {
+		Map<String, String> updates = new LinkedHashMap<>();
+		updates.put("b", "2");
+		updates.put("a", "1 ");
+		// No terminator on the last line, and CRLF kept for appended lines
+		assertEquals("x=1\r\ny=2\r\nb=2\r\na=1 \r\n", patch("x=1\r\ny=2", updates, null));
+	}
+	
+	@Test
+	public void testContinuationAndEscapedKeys() throws IOException {
+		String in = "long.value = one, \\\n"
+				  + "    two\n"
+				  + "my\\ key = old\n"
+				  + "\\u0041bc=old\n"
+				  + "not.continued = ends in \\\\\n"
+				  + "last=1\n";
+		Map<String, String> updates = new LinkedHashMap<>();
+		updates.put("long.value", "both");
+		updates.put("my key", "new");
+		updates.put("Abc", "new");
+		
+		String out = patch(in, updates, null);
+		assertEquals("long.value=both\n"
+				   + "my\\ key=new\n"
+				   + "Abc=new\n"
+				   + "not.continued = ends in \\\\\n"
+				   + "last=1\n", out);
+		
+		Properties p = new Properties();
+		p.load(new StringReader(out));
+		assertEquals("new", p.getProperty("my key"));
+		assertEquals("ends in \\", p.getProperty("not.continued"));
+	}
+	
+	@Test
+	public void testHeaderIsReplacedNotRepeated() throws IOException {
+		String once = patch("a=1\n", Map.of(), "#Built On: host-a");
+		assertEquals("#Built On: host-a" + NL + "a=1\n", once);
+		assertEquals("#Built On: host-b" + NL + "a=1\n", patch(once, Map.of(), "#Built On: host-b"));
+	}
+	
+	@Test
+	public void testParseKey() {
+		assertEquals("a.b", PropertiesPatcher.parseKey("  a.b=1\n"));
+		assertEquals("a",   PropertiesPatcher.parseKey("a 1"));
+		assertEquals("a:b", PropertiesPatcher.parseKey("a\\:b:1"));
+		assertNull(PropertiesPatcher.parseKey("# a=1\n"));
+		assertNull(PropertiesPatcher.parseKey("   \n"));
+	}
+	
+	private static String patch(String in, Map<String, String> updates, String header) throws IOException {
+		StringWriter out = new StringWriter();
+		new PropertiesPatcher(updates).patch(new StringReader(in), out, header);
+		return out.toString();
+	}
+	
+}
@@ -23,6 +23,7 @@
 package net.brianjslattery.oss.propertizer.utilities;
 
 import static java.util.stream.Collectors.toSet;
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
@@ -31,12 +32,20 @@ import java.io.IOException;
 import java.lang.reflect.Constructor;
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Modifier;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.attribute.FileTime;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Properties;
 import java.util.Set;
+import java.util.TreeMap;
 
+import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
 
 /**
  * 
@@ -45,6 +54,9 @@ import org.junit.Test;
  */
 public class UtilitiesTest {
 	
+	@Rule
+	public TemporaryFolder tmp = new TemporaryFolder();
+	
 	@Test
 	public void testLoad() throws IOException {
 		String fileName = "propertizer.properties";
@@ -60,16 +72,105 @@ public class UtilitiesTest {
 		Path cwd        = Paths.get(System.getProperty("user.dir"));
 		Path propsFile  = cwd.resolve(fileName);
 
-		String testFileName = "test.properties";
-		Path testFile  = cwd.resolve(testFileName);
+		Path dir       = tmp.getRoot().toPath();
+		Path testFile  = dir.resolve("test.properties");
 		
 		Files.copy(propsFile, testFile);
 		
-		Set<String> before = listBakFiles();
 		Utilities.createBackupFile(testFile);
-		Set<String> after = listBakFiles();
-		assertEquals(before.size() + 1, after.size());
+		Set<Path> baks = listBakFiles(dir);
+		assertEquals(1, baks.size());
+		
+		// The backup is a copy; the live file stays in place until it is replaced
+		assertTrue(Files.exists(testFile));
+		assertArrayEquals(Files.readAllBytes(testFile), Files.readAllBytes(baks.iterator().next()));
+		
+	}
+	
+	@Test
+	public void testPatchUnchangedIsNotWritten() throws IOException {
+		Path dir  = tmp.getRoot().toPath();
+		Path src  = Files.writeString(dir.resolve("template.properties"), "# template\na=old\n");
+		Path file = dir.resolve("iiq.properties");
+		
+		Map<String, String> updates = new HashMap<>();
+		updates.put("b", "2");
+		updates.put("a", "1");
+		
+		assertTrue(Utilities.patchProperties(src, updates, file));
+		byte[] first = Files.readAllBytes(file);
+		FileTime modified = Files.getLastModifiedTime(file);
+		
+		// Same updates, inserted in another order
+		Map<String, String> again = new HashMap<>();
+		again.put("a", "1");
+		again.put("b", "2");
+		assertFalse(Utilities.patchProperties(src, again, file));
+		assertArrayEquals(first, Files.readAllBytes(file));
+		assertEquals(modified, Files.getLastModifiedTime(file));
+		assertEquals(2, Files.list(dir).count());
+		
+		again.put("c", "3");
+		assertTrue(Utilities.patchProperties(src, again, file));
+		assertEquals(3, Files.list(dir).count());
+	}
+	
+	@Test
+	public void testPatchIgnoresHeaderWhenComparing() throws IOException {
+		Path dir  = tmp.getRoot().toPath();
+		Path file = Files.writeString(dir.resolve("iiq.properties"), "#Built On: elsewhere\na=1\n");
+		
+		Map<String, String> updates = new TreeMap<>();
+		updates.put("a", "1");
 		
+		assertFalse(Utilities.patchProperties(file, updates, file));
+		assertEquals("#Built On: elsewhere\na=1\n", Files.readString(file));
+	}
+	
+	@Test
+	public void testPatchKeepsBackupAndLeavesNoTemp() throws IOException {
+		Path dir  = tmp.getRoot().toPath();
+		Path file = Files.writeString(dir.resolve("target.properties"), "old=1\n");
+		
+		Map<String, String> updates = new TreeMap<>();
+		updates.put("new", "2");
+		assertTrue(Utilities.patchProperties(dir.resolve("missing.properties"), updates, file));
+		
+		Set<String> names = Files.list(dir).map(f -> f.getFileName().toString()).collect(toSet());
+		assertEquals(names.toString(), 2, names.size());
+		Path bak = Files.list(dir).filter(f -> f.toString().endsWith(".bak")).findFirst().get();
+		assertEquals("old=1\n", Files.readString(bak));
+		assertTrue(Files.readString(file).endsWith("new=2" + System.lineSeparator()));
+	}
+	
+	@Test
+	public void testPatchInPlace() throws IOException {
+		Path dir  = Files.createTempDirectory("patch");
+		Path file = Files.writeString(dir.resolve("iiq.properties"), "# template\nkeep=1\nset=old\n");
+		
+		Map<String, String> updates = new TreeMap<>();
+		updates.put("set", "new");
+		updates.put("added", "2");
+		
+		assertTrue(Utilities.patchProperties(file, updates, file));
+		String out = Files.readString(file);
+		assertTrue(out, out.endsWith("# template\nkeep=1\nset=new\nadded=2" + System.lineSeparator()));
+		
+		// Patching again changes nothing, and leaves one backup
+		assertFalse(Utilities.patchProperties(file, updates, file));
+		assertEquals(out, Files.readString(file));
+		assertEquals(2, Files.list(dir).count());
+	}
+	
+	@Test
+	public void testRenderIsSortedWithoutDate() throws IOException {
+		Properties p = new Properties();
+		p.setProperty("zeta", "z");
+		p.setProperty("alpha", "a b");
+		p.setProperty("mid", "m");
+		String nl = System.lineSeparator();
+		assertEquals("alpha=a b" + nl + "mid=m" + nl + "zeta=z" + nl,
+				new String(Utilities.render(p), StandardCharsets.ISO_8859_1));
 	}
 	
 	@Test
@@ -122,11 +223,9 @@ public class UtilitiesTest {
 		assertEquals("KEEP__ME", Utilities.dropKmsSuffix("KEEP__ME_KMS"));
 	}
 	
-	private static final Set<String> listBakFiles() throws IOException {
-		Path cwd = Paths.get(System.getProperty("user.dir"));
-		return Files.list(cwd)
-					.map(p -> p.getFileName().toString())
-					.filter(x -> x.endsWith(".bak"))
+	private static final Set<Path> listBakFiles(Path dir) throws IOException {
+		return Files.list(dir)
+					.filter(x -> x.getFileName().toString().endsWith(".bak"))
 					.collect(toSet());
 	}
 	